@@ -0,0 +1,262 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+
+/**
+ * Microbenchmark suite for the Deck index.
+ *
+ * A small self-contained harness in the spirit of JMH (warmup and measured
+ * iterations, a result sink so the JIT cannot drop the work, parameter
+ * sweeps), so it runs with nothing but the JDK next to the game sources:
+ *
+ *   javac -d bench/out src/*.java bench/*.java
+ *   java -Xmx8g -cp bench/out DeckBenchmark -size 1000,100000 -dist bands,singletons
+ *
+ * Options (comma-separated lists are swept):
+ *   -bench   insert,delete,p1,p2,p3,p4,steal,battle   (default: all)
+ *   -size    deck sizes, e.g. 1000,1e5,1e7             (default: 1000,100000,1000000)
+ *   -dist    uniform | bands | singletons              (default: all)
+ *   -engine  nested | pooled | flat | persistent       (default: nested)
+ *   -wi / -i warmup / measured iterations              (default: 3 / 5)
+ *   -ops     operations per query/battle iteration     (default: 1000000)
+ *   -seed    random seed                               (default: 42)
+ *
+ * Distributions: "bands" draws attack from 1..16 (few large bands),
+ * "singletons" gives every card its own attack value (one-card bands),
+ * "uniform" draws attack and health from 1..1000.
+ */
+public class DeckBenchmark {
+    private static final String[] ALL_BENCHES = { "insert", "delete", "p1", "p2", "p3", "p4", "steal", "battle" };
+    private static final int MAX_H = 1000;
+
+    // Result sink: keeps the JIT from eliminating benchmark work
+    private static volatile long blackhole;
+
+    public static void main(String[] args) throws Exception {
+        String[] benches = ALL_BENCHES;
+        int[] sizes = { 1000, 100000, 1000000 };
+        String[] dists = { "uniform", "bands", "singletons" };
+        String[] engines = { "nested" };
+        int warmup = 3, iterations = 5, ops = 1000000;
+        long seed = 42;
+
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String v = args[i + 1];
+            switch (args[i]) {
+                case "-bench": benches = v.split(","); break;
+                case "-size": sizes = parseSizes(v); break;
+                case "-dist": dists = v.split(","); break;
+                case "-engine": engines = v.split(","); break;
+                case "-wi": warmup = Integer.parseInt(v); break;
+                case "-i": iterations = Integer.parseInt(v); break;
+                case "-ops": ops = Integer.parseInt(v); break;
+                case "-seed": seed = Long.parseLong(v); break;
+                default:
+                    System.out.println("Unknown option: " + args[i]);
+                    return;
+            }
+        }
+
+        System.out.printf("%-8s %10s %-11s %-7s %4s %12s %10s  %s%n",
+                "Bench", "size", "dist", "engine", "cnt", "ns/op", "error", "notes");
+        for (String bench : benches)
+            for (int size : sizes)
+                for (String dist : dists)
+                    for (String engine : engines)
+                        run(bench, size, dist, engine, warmup, iterations, ops, seed);
+    }
+
+    private static void run(String bench, int size, String dist, String engine,
+                            int warmup, int iterations, int ops, long seed) throws Exception {
+        Scenario sc = new Scenario(bench, size, dist, engine, ops, seed);
+        for (int w = 0; w < warmup; w++) sc.iteration();
+        double[] nsPerOp = new double[iterations];
+        for (int it = 0; it < iterations; it++) nsPerOp[it] = sc.iteration();
+
+        double mean = 0;
+        for (double v : nsPerOp) mean += v;
+        mean /= iterations;
+        double var = 0;
+        for (double v : nsPerOp) var += (v - mean) * (v - mean);
+        double err = iterations > 1 ? Math.sqrt(var / (iterations - 1)) : 0;
+        System.out.printf("%-8s %10d %-11s %-7s %4d %12.1f %10.1f  %s%n",
+                bench, size, dist, engine, iterations, mean, err, sc.notes());
+    }
+
+    private static int[] parseSizes(String v) {
+        String[] parts = v.split(",");
+        int[] out = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) out[i] = (int) Double.parseDouble(parts[i]);
+        return out;
+    }
+
+    static DeckIndex newDeck(String engine) {
+        return DeckIndex.create(engine);
+    }
+
+    /** One (bench, size, dist, engine) combination with its prepared data. */
+    private static final class Scenario {
+        final String bench, engine;
+        final int size, ops, maxA;
+        final Card[] cards;
+        final int[] queryAtt, queryHp;
+        final Random rnd;
+        final int[] priorityHits = new int[5];
+
+        DeckIndex deck;     // prepared deck for the query benchmarks
+        GameManager game;   // prepared game for the battle benchmark
+        ResponseSink out;   // discards the game's responses
+
+        Scenario(String bench, int size, String dist, String engine, int ops, long seed) throws IOException {
+            this.bench = bench;
+            this.engine = engine;
+            this.size = size;
+            this.ops = ops;
+            this.rnd = new Random(seed);
+
+            switch (dist) {
+                case "bands": maxA = 16; break;
+                case "singletons": maxA = size; break;
+                case "uniform": maxA = MAX_H; break;
+                default: throw new IllegalArgumentException("Unknown dist: " + dist);
+            }
+            cards = new Card[size];
+            int[] singletonA = dist.equals("singletons") ? shuffledRange(size) : null;
+            for (int i = 0; i < size; i++) {
+                int a = singletonA != null ? singletonA[i] : 1 + rnd.nextInt(maxA);
+                cards[i] = new Card(i, a, 1 + rnd.nextInt(MAX_H), i + 1);
+            }
+
+            queryAtt = new int[1024];
+            queryHp = new int[1024];
+            for (int i = 0; i < queryAtt.length; i++) pickQuery(i);
+
+            if (!bench.equals("insert") && !bench.equals("delete")) {
+                if (bench.equals("battle")) {
+                    out = new ResponseSink(NULL_STREAM);
+                    game = new GameManager(out, newDeck(engine));
+                    for (int i = 0; i < size; i++) game.getNames().intern("c" + i); // ids match the cards' name ids
+                    for (Card c : cards) {
+                        game.handleDrawCard(c.getNameId(), c.getAInit(), c.getHInit());
+                        out.endCommand();
+                    }
+                } else {
+                    deck = filledDeck();
+                }
+            }
+        }
+
+        // Stranger cards steering the pick into the requested priority class
+        private void pickQuery(int i) {
+            switch (bench) {
+                case "p1":    // some card kills (A >= hp) and survives (H > att)
+                    queryAtt[i] = rnd.nextInt(MAX_H / 2); queryHp[i] = 1 + rnd.nextInt(Math.max(1, maxA / 2)); break;
+                case "p2":    // nobody kills, many survive
+                    queryAtt[i] = rnd.nextInt(MAX_H / 2); queryHp[i] = maxA + 1; break;
+                case "p3":    // kills, nobody survives
+                    queryAtt[i] = MAX_H; queryHp[i] = 1 + rnd.nextInt(maxA); break;
+                case "p4":    // neither
+                    queryAtt[i] = MAX_H; queryHp[i] = maxA + 1; break;
+                case "steal": // attack/health limits
+                    queryAtt[i] = rnd.nextInt(maxA); queryHp[i] = rnd.nextInt(MAX_H); break;
+                default:      // battle: a mix of everything
+                    queryAtt[i] = rnd.nextInt(MAX_H); queryHp[i] = 1 + rnd.nextInt(maxA + 1); break;
+            }
+        }
+
+        private DeckIndex filledDeck() {
+            DeckIndex d = newDeck(engine);
+            for (Card c : cards) d.insert(c);
+            return d;
+        }
+
+        // Run one iteration and return ns per operation
+        double iteration() throws IOException {
+            long sink = 0;
+            long t0, t1;
+            int n;
+            switch (bench) {
+                case "insert": {
+                    DeckIndex d = newDeck(engine);
+                    t0 = System.nanoTime();
+                    for (Card c : cards) d.insert(c);
+                    t1 = System.nanoTime();
+                    sink += d.getCardCount();
+                    n = size;
+                    break;
+                }
+                case "delete": {
+                    DeckIndex d = filledDeck();
+                    int[] perm = shuffledRange(size);
+                    t0 = System.nanoTime();
+                    for (int i = 0; i < size; i++) d.delete(cards[perm[i] - 1]);
+                    t1 = System.nanoTime();
+                    sink += d.getCardCount();
+                    n = size;
+                    break;
+                }
+                case "steal": {
+                    t0 = System.nanoTime();
+                    for (int i = 0; i < ops; i++) {
+                        Card c = deck.findBestStealCandidate(queryAtt[i & 1023], queryHp[i & 1023]);
+                        if (c != null) sink += c.getOrder();
+                    }
+                    t1 = System.nanoTime();
+                    n = ops;
+                    break;
+                }
+                case "battle": {
+                    // one battle plus one draw per op keeps the deck size steady
+                    t0 = System.nanoTime();
+                    for (int i = 0; i < ops; i++) {
+                        game.handleBattle(queryAtt[i & 1023], queryHp[i & 1023], 0);
+                        out.endCommand();
+                        Card c = cards[i % size];
+                        game.handleDrawCard(c.getNameId(), c.getAInit(), c.getHInit());
+                        out.endCommand(); // flush like a real command loop, or the buffer grows every op
+                    }
+                    t1 = System.nanoTime();
+                    n = ops;
+                    break;
+                }
+                default: { // p1..p4
+                    t0 = System.nanoTime();
+                    for (int i = 0; i < ops; i++) {
+                        Card c = deck.findOptimalBattleCard(queryAtt[i & 1023], queryHp[i & 1023]);
+                        if (c != null) sink += c.getOrder();
+                        priorityHits[deck.getLastPickPriority()]++;
+                    }
+                    t1 = System.nanoTime();
+                    n = ops;
+                    break;
+                }
+            }
+            blackhole += sink;
+            return (double) (t1 - t0) / n;
+        }
+
+        // Share of picks that landed in the requested class (query benchmarks only)
+        String notes() {
+            if (!bench.startsWith("p")) return "";
+            long total = 0;
+            for (int h : priorityHits) total += h;
+            int want = bench.charAt(1) - '0';
+            return String.format("hit P%d %.0f%%", want, total == 0 ? 0.0 : 100.0 * priorityHits[want] / total);
+        }
+
+        private int[] shuffledRange(int n) {
+            int[] p = new int[n];
+            for (int i = 0; i < n; i++) p[i] = i + 1;
+            for (int i = n - 1; i > 0; i--) {
+                int j = rnd.nextInt(i + 1);
+                int t = p[i]; p[i] = p[j]; p[j] = t;
+            }
+            return p;
+        }
+    }
+
+    private static final OutputStream NULL_STREAM = new OutputStream() {
+        @Override public void write(int b) { }
+        @Override public void write(byte[] b, int off, int len) { }
+    };
+}
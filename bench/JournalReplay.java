@@ -0,0 +1,119 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Replays a command journal (Main -Dnightpass.journal=FILE) against one or
+ * more deck engines and reports the first command whose response differs
+ * from the recorded one.
+ *
+ *   java -cp bench/out JournalReplay -journal run.jnl -engine nested,pooled,flat
+ *
+ * Options:
+ *   -journal FILE    journal to replay (required)
+ *   -engine LIST     engines to check (default: nested)
+ *   -restore FILE    snapshot to start from; required when the journal was
+ *                    opened after a restore (its first command N is not 0;
+ *                    Main writes it as JOURNAL.N, see CommandJournal.segment)
+ *
+ * Responses are compared by length and hash, so no text output is needed;
+ * on a divergence the replayed response is printed for inspection.
+ */
+public class JournalReplay {
+    private static final String[] NAMES = { "?", "draw_card", "battle", "steal_card", "deck_count", "find_winning",
+            "discard_pile_count", "count_range", "kth_strongest_attack", "kth_strongest_health",
+            "histogram_attack", "histogram_health" };
+
+    public static void main(String[] args) throws IOException {
+        String journalFile = null, restoreFile = null;
+        String[] engines = { "nested" };
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String v = args[i + 1];
+            switch (args[i]) {
+                case "-journal": journalFile = v; break;
+                case "-engine": engines = v.split(","); break;
+                case "-restore": restoreFile = v; break;
+                default:
+                    System.out.println("Unknown option: " + args[i]);
+                    return;
+            }
+        }
+        if (journalFile == null) {
+            System.out.println("Usage: java JournalReplay -journal <file> [-engine nested,pooled,flat] [-restore <snapshot>]");
+            return;
+        }
+
+        boolean allOk = true;
+        for (String engine : engines)
+            allOk &= replay(Paths.get(journalFile), restoreFile == null ? null : Paths.get(restoreFile), engine);
+        if (!allOk) System.exit(1);
+    }
+
+    private static boolean replay(Path journalFile, Path restoreFile, String engine) throws IOException {
+        ResponseSink sink = new ResponseSink(NULL_STREAM);
+        GameManager game = new GameManager(sink, DeckIndex.create(engine, Integer.getInteger("nightpass.cache", 0)));
+
+        try (CommandJournal.Reader journal = new CommandJournal.Reader(journalFile)) {
+            long first = journal.getFirstCommand();
+            if (restoreFile != null) {
+                GameSnapshot snapshot = GameSnapshot.read(restoreFile);
+                if (snapshot.commandsApplied != first) {
+                    System.out.printf("%s: snapshot is at command %d but the journal starts after %d%n",
+                            engine, snapshot.commandsApplied, first);
+                    return false;
+                }
+                snapshot.applyTo(game);
+            } else if (first != 0) {
+                System.out.printf("%s: journal starts after command %d, pass the matching -restore snapshot%n", engine, first);
+                return false;
+            }
+
+            long count = 0;
+            long t0 = System.nanoTime();
+            while (journal.next()) {
+                long start = sink.position();
+                int[] a = journal.args;
+                switch (journal.command) {
+                    case CommandReader.DRAW_CARD: game.handleDrawCard(journal.name, a[0], a[1]); break;
+                    case CommandReader.BATTLE: game.handleBattle(a[0], a[1], a[2]); break;
+                    case CommandReader.STEAL_CARD: game.handleStealCard(a[0], a[1]); break;
+                    case CommandReader.DECK_COUNT: game.handleDeckCount(); break;
+                    case CommandReader.DISCARD_PILE_COUNT: game.handleDiscardPileCount(); break;
+                    case CommandReader.COUNT_RANGE: game.handleCountRange(a[0], a[1], a[2], a[3]); break;
+                    case CommandReader.KTH_STRONGEST_ATTACK: game.handleKthStrongest(false, a[0]); break;
+                    case CommandReader.KTH_STRONGEST_HEALTH: game.handleKthStrongest(true, a[0]); break;
+                    case CommandReader.HISTOGRAM_ATTACK: game.handleHistogram(false, a[0]); break;
+                    case CommandReader.HISTOGRAM_HEALTH: game.handleHistogram(true, a[0]); break;
+                    default: game.handleFindWinning(); break;
+                }
+                count++;
+                int length = (int) (sink.position() - start);
+                long hash = sink.hashSince(start);
+                if (length != journal.outputLength || hash != journal.outputHash) {
+                    System.out.printf("%s: DIVERGED at command %d: %s%n", engine, first + count, describe(journal));
+                    System.out.printf("  recorded: %d bytes, hash %016x%n", journal.outputLength, journal.outputHash);
+                    System.out.printf("  replayed: %d bytes, hash %016x%n", length, hash);
+                    System.out.print("  replayed output: " + sink.textSince(start));
+                    return false;
+                }
+                sink.endCommand();
+            }
+            long ms = (System.nanoTime() - t0) / 1000000;
+            System.out.printf("%s: OK, %d commands replayed in %d ms%n", engine, count, ms);
+            return true;
+        }
+    }
+
+    private static String describe(CommandJournal.Reader r) {
+        StringBuilder sb = new StringBuilder(NAMES[r.command]);
+        if (r.name != null) sb.append(' ').append(r.name);
+        for (int i = 0; i < CommandReader.argCount(r.command); i++) sb.append(' ').append(r.args[i]);
+        return sb.toString();
+    }
+
+    private static final OutputStream NULL_STREAM = new OutputStream() {
+        @Override public void write(int b) { }
+        @Override public void write(byte[] b, int off, int len) { }
+    };
+}
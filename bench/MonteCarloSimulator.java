@@ -0,0 +1,222 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Monte Carlo comparison of Survivor strategies.
+ *
+ * Plays many short randomized games entirely in memory, each on its own
+ * GameManager and deck, once per strategy: game i is driven by the same
+ * seeded command stream for every strategy, so the strategies are compared
+ * on identical draws and battles (only the Stranger's steals may differ,
+ * since they depend on what is left in the deck).
+ *
+ *   java -cp bench/out MonteCarloSimulator -games 1e6 -strategy priority,strongest,random
+ *
+ * Options:
+ *   -games     games per strategy                          (default: 100000)
+ *   -turns     commands per game                           (default: 200)
+ *   -strategy  priority,strongest,weakest,toughest,random  (default: all)
+ *   -stranger  random | greedy | passive                   (default: random)
+ *   -mix       draw,battle,steal percentages               (default: 50,40,10)
+ *   -maxv      attack/health values are drawn from 1..maxv (default: 100)
+ *   -heal      heal pool per battle is drawn from 0..heal  (default: 0)
+ *   -engine    nested | pooled | flat | persistent         (default: nested)
+ *   -threads   fork-join workers                           (default: cores)
+ *   -seed      base seed                                   (default: 42)
+ *
+ * Game ranges are split recursively on a ForkJoinPool; every leaf keeps its
+ * own tallies and histograms, which are merged on the way back up. Results
+ * depend only on the seed, not on the thread count.
+ */
+public class MonteCarloSimulator {
+    private static final String[] ALL_STRATEGIES = { "priority", "strongest", "weakest", "toughest", "random" };
+    private static final int GRAIN = 256; // games per leaf task
+
+    private final String[] strategies;
+    private final String stranger, engine;
+    private final int turns, drawPct, battlePct, maxValue, heal;
+    private final long seed;
+
+    /** Tallies of one strategy over a range of games. */
+    private static final class Stats {
+        long games, wins, ties, battles;
+        final LatencyHistogram survivorScore = new LatencyHistogram();
+        final LatencyHistogram strangerScore = new LatencyHistogram();
+
+        void merge(Stats o) {
+            games += o.games;
+            wins += o.wins;
+            ties += o.ties;
+            battles += o.battles;
+            survivorScore.merge(o.survivorScore);
+            strangerScore.merge(o.strangerScore);
+        }
+    }
+
+    MonteCarloSimulator(String[] strategies, String stranger, String engine, int turns,
+                        int drawPct, int battlePct, int maxValue, int heal, long seed) {
+        this.strategies = strategies;
+        this.stranger = stranger;
+        this.engine = engine;
+        this.turns = turns;
+        this.drawPct = drawPct;
+        this.battlePct = battlePct;
+        this.maxValue = maxValue;
+        this.heal = heal;
+        this.seed = seed;
+        // fail fast on unknown names
+        for (String s : strategies) SurvivorStrategy.forName(s, 0);
+        StrangerBehavior.forName(stranger, maxValue);
+        DeckIndex.create(engine);
+    }
+
+    public static void main(String[] args) {
+        String[] strategies = ALL_STRATEGIES;
+        String stranger = "random", engine = "nested";
+        long games = 100000;
+        int turns = 200, maxValue = 100, heal = 0;
+        int[] mix = { 50, 40, 10 };
+        int threads = Runtime.getRuntime().availableProcessors();
+        long seed = 42;
+
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String v = args[i + 1];
+            switch (args[i]) {
+                case "-games": games = (long) Double.parseDouble(v); break;
+                case "-turns": turns = (int) Double.parseDouble(v); break;
+                case "-strategy": strategies = v.split(","); break;
+                case "-stranger": stranger = v; break;
+                case "-mix": mix = parseMix(v); break;
+                case "-maxv": maxValue = Integer.parseInt(v); break;
+                case "-heal": heal = Integer.parseInt(v); break;
+                case "-engine": engine = v; break;
+                case "-threads": threads = Integer.parseInt(v); break;
+                case "-seed": seed = Long.parseLong(v); break;
+                default:
+                    System.out.println("Unknown option: " + args[i]);
+                    return;
+            }
+        }
+
+        MonteCarloSimulator sim;
+        try {
+            sim = new MonteCarloSimulator(strategies, stranger, engine, turns,
+                    mix[0], mix[1], maxValue, heal, seed);
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            return;
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        long t0 = System.nanoTime();
+        Stats[] stats;
+        try {
+            stats = pool.invoke(sim.new Range(0, games));
+        } finally {
+            pool.shutdown();
+        }
+        double seconds = (System.nanoTime() - t0) / 1e9;
+
+        System.out.printf("%d games x %d strategies, %d turns, stranger=%s, mix=%d/%d/%d, maxv=%d, heal=%d, %d threads: %.2f s (%.0f games/s)%n",
+                games, strategies.length, turns, stranger, mix[0], mix[1], mix[2], maxValue, heal,
+                threads, seconds, games * strategies.length / seconds);
+        System.out.printf("%-10s %8s %7s %9s | %-30s | %-30s%n", "strategy", "win%", "tie%", "battles",
+                "survivor score mean/p10/p50/p90", "stranger score mean/p10/p50/p90");
+        for (int s = 0; s < strategies.length; s++) {
+            Stats st = stats[s];
+            System.out.printf("%-10s %8.2f %7.2f %9.1f | %s | %s%n", strategies[s],
+                    100.0 * st.wins / st.games, 100.0 * st.ties / st.games, (double) st.battles / st.games,
+                    distribution(st.survivorScore), distribution(st.strangerScore));
+        }
+    }
+
+    /** Plays games [lo, hi) for every strategy, splitting until GRAIN games are left. */
+    private final class Range extends RecursiveTask<Stats[]> {
+        private static final long serialVersionUID = 1L;
+        private final long lo, hi;
+
+        Range(long lo, long hi) {
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        @Override
+        protected Stats[] compute() {
+            if (hi - lo <= GRAIN) return playRange(lo, hi);
+            long mid = (lo + hi) >>> 1;
+            Range left = new Range(lo, mid);
+            left.fork();
+            Stats[] right = new Range(mid, hi).compute();
+            Stats[] merged = left.join();
+            for (int s = 0; s < merged.length; s++) merged[s].merge(right[s]);
+            return merged;
+        }
+    }
+
+    private Stats[] playRange(long lo, long hi) {
+        Stats[] stats = new Stats[strategies.length];
+        ResponseSink sink = new ResponseSink(NULL_STREAM); // one sink per leaf, output is discarded
+        for (int s = 0; s < strategies.length; s++) {
+            stats[s] = new Stats();
+            for (long g = lo; g < hi; g++) play(g, s, sink, stats[s]);
+        }
+        return stats;
+    }
+
+    private void play(long gameIndex, int strategyIndex, ResponseSink sink, Stats stats) {
+        long gameSeed = seed * 0x9E3779B97F4A7C15L + gameIndex;
+        Random commands = new Random(gameSeed);
+        Random steals = new Random(~gameSeed);
+        GameManager game = new GameManager(sink, DeckIndex.create(engine));
+        game.setSurvivorStrategy(SurvivorStrategy.forName(strategies[strategyIndex], gameSeed));
+        StrangerBehavior behavior = StrangerBehavior.forName(stranger, maxValue);
+        int cardName = game.getNames().intern("card");
+
+        try {
+            for (int t = 0; t < turns; t++) {
+                int r = commands.nextInt(100);
+                if (r < drawPct) {
+                    game.handleDrawCard(cardName, 1 + commands.nextInt(maxValue), 1 + commands.nextInt(maxValue));
+                } else if (r < drawPct + battlePct) {
+                    game.handleBattle(1 + commands.nextInt(maxValue), 1 + commands.nextInt(maxValue),
+                            heal == 0 ? 0 : commands.nextInt(heal + 1));
+                    stats.battles++;
+                } else {
+                    behavior.steal(game, steals);
+                }
+                sink.endCommand();
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // the null stream never throws
+        }
+
+        int survivor = game.getSurvivorPoints(), strangerPoints = game.getStrangerPoints();
+        stats.games++;
+        if (survivor >= strangerPoints) stats.wins++; // find_winning: Survivor wins ties
+        if (survivor == strangerPoints) stats.ties++;
+        stats.survivorScore.record(survivor);
+        stats.strangerScore.record(strangerPoints);
+    }
+
+    private static String distribution(LatencyHistogram h) {
+        return String.format("%7.1f %6d %6d %6d  ", h.getMean(), h.getValueAtPercentile(10),
+                h.getValueAtPercentile(50), h.getValueAtPercentile(90));
+    }
+
+    private static int[] parseMix(String v) {
+        String[] parts = v.split(",");
+        if (parts.length != 3) throw new IllegalArgumentException("-mix needs draw,battle,steal");
+        int[] mix = new int[3];
+        for (int i = 0; i < 3; i++) mix[i] = Integer.parseInt(parts[i]);
+        if (mix[0] + mix[1] + mix[2] != 100) throw new IllegalArgumentException("-mix must add up to 100");
+        return mix;
+    }
+
+    private static final OutputStream NULL_STREAM = new OutputStream() {
+        @Override public void write(int b) { }
+        @Override public void write(byte[] b, int off, int len) { }
+    };
+}
@@ -0,0 +1,294 @@
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+
+/**
+ * Deterministic synthetic input generator for scale testing.
+ *
+ * Emits command files in the format Main reads, streaming them to disk
+ * through a ResponseSink so multi-GB files need no more memory than the
+ * simulated deck. The same seed and options always produce the same file.
+ *
+ *   java -cp bench/out WorkloadGenerator -out big.txt -commands 1e8 -seed 7 \
+ *        -attack zipf:1000:1.1 -health clustered:8:5000 -classes 40,30,20,10
+ *
+ * Options:
+ *   -out FILE          output file (required)
+ *   -commands N        number of commands (default 1e6)
+ *   -seed S            random seed (default 1)
+ *   -initial N         leading run of draw_card commands (default 0)
+ *   -mix d,b,s,c,w     weights for draw_card, battle, steal_card, deck_count,
+ *                      find_winning (default 35,45,8,8,4)
+ *   -growth G          target deck growth in cards per 1000 commands; when set,
+ *                      draw_card is issued whenever the deck is below target
+ *                      and the other commands follow -mix
+ *   -attack DIST       attack distribution of drawn cards  (default uniform:1:1000)
+ *   -health DIST       health distribution of drawn cards  (default uniform:1:1000)
+ *   -classes p1,p2,p3,p4   target share of battles per priority class; needs
+ *                      the deck simulation (default: off, stranger cards are
+ *                      drawn from the same distributions as the deck)
+ *   -heal MAX          heal pool of battles drawn from 0..MAX (default 0)
+ *   -names K           number of distinct card names (default 1000)
+ *   -simulate BOOL     keep a shadow game to track deck size (default true;
+ *                      -growth and -classes need it)
+ *
+ * Distributions: uniform:LO:HI, zipf:N:S (1..N, exponent S, 1 most likely),
+ * clustered:K:HI (K band centres in 1..HI, values within +-2% of a centre).
+ */
+public class WorkloadGenerator {
+    private static final byte[] DRAW = ResponseSink.fragment("draw_card ");
+    private static final byte[] BATTLE = ResponseSink.fragment("battle ");
+    private static final byte[] STEAL = ResponseSink.fragment("steal_card ");
+    private static final byte[] DECK_COUNT = ResponseSink.fragment("deck_count\n");
+    private static final byte[] FIND_WINNING = ResponseSink.fragment("find_winning\n");
+    private static final byte[] CARD = ResponseSink.fragment("card");
+    private static final byte SPACE = ' ';
+    private static final byte NEWLINE = '\n';
+
+    // Tries per battle to hit the requested class with distribution samples before the fallback
+    private static final int CLASS_TRIES = 8;
+
+    private final Random rnd;
+    private final Dist attack, health;
+    private final int[] mix;
+    private final int mixTotal;
+    private final double growth;
+    private final int[] classes; // cumulative weights, null = off
+    private final int heal, names;
+
+    private final ResponseSink out;
+    private final Deck deck;          // shadow deck, null without simulation
+    private final GameManager shadow; // plays every generated command against deck
+    private final ResponseSink shadowOut; // discards the shadow game's responses
+
+    WorkloadGenerator(long seed, Dist attack, Dist health, int[] mix, double growth, int[] classes,
+                      int heal, int names, boolean simulate, OutputStream os) {
+        this.rnd = new Random(seed);
+        this.attack = attack;
+        this.health = health;
+        this.mix = mix;
+        int t = 0;
+        for (int w : mix) t += w;
+        this.mixTotal = t;
+        this.growth = growth;
+        this.classes = classes;
+        this.heal = heal;
+        this.names = names;
+        this.out = new ResponseSink(os, 1 << 20);
+        if (simulate) {
+            deck = new Deck();
+            shadowOut = new ResponseSink(NULL_STREAM);
+            shadow = new GameManager(shadowOut, deck);
+        } else {
+            deck = null;
+            shadow = null;
+            shadowOut = null;
+        }
+    }
+
+    void generate(long commands, long initial) throws IOException {
+        for (long i = 0; i < commands; i++) {
+            int cmd;
+            if (i < initial) cmd = 0;
+            else if (growth > 0 && deck.getCardCount() < initial + growth * (i - initial) / 1000.0) cmd = 0;
+            else cmd = pickMix(growth > 0);
+
+            switch (cmd) {
+                case 0: draw(); break;
+                case 1: battle(); break;
+                case 2: steal(); break;
+                case 3: out.append(DECK_COUNT); break;
+                default: out.append(FIND_WINNING); break;
+            }
+            out.endCommand();
+            if (shadowOut != null) shadowOut.endCommand(); // else the buffer grows with every response
+        }
+        out.close();
+    }
+
+    private int pickMix(boolean skipDraw) {
+        int total = skipDraw ? mixTotal - mix[0] : mixTotal;
+        if (total <= 0) return 0;
+        int r = rnd.nextInt(total);
+        for (int k = skipDraw ? 1 : 0; k < mix.length; k++) {
+            if (r < mix[k]) return k;
+            r -= mix[k];
+        }
+        return mix.length - 1;
+    }
+
+    private void draw() {
+        int id = rnd.nextInt(names);
+        int a = attack.sample(rnd), h = health.sample(rnd);
+        out.append(DRAW).append(CARD).appendInt(id).append(SPACE)
+                .appendInt(a).append(SPACE).appendInt(h).append(NEWLINE);
+        if (shadow != null) shadow.handleDrawCard("card" + id, a, h);
+    }
+
+    private void battle() {
+        int att = health.sample(rnd), hp = attack.sample(rnd);
+        if (classes != null && deck.getCardCount() > 0) {
+            int want = pickClass();
+            int tries = 0;
+            while (classOf(att, hp) != want && ++tries < CLASS_TRIES) {
+                att = health.sample(rnd);
+                hp = attack.sample(rnd);
+            }
+            if (tries == CLASS_TRIES) {
+                // extremes that always land in the wanted class (cards never exceed the maxima)
+                int lowAtt = 0, highAtt = health.max(), lowHp = 1, highHp = attack.max() + 1;
+                switch (want) {
+                    case 1: att = lowAtt;  hp = lowHp;  break;
+                    case 2: att = lowAtt;  hp = highHp; break;
+                    case 3: att = highAtt; hp = lowHp;  break;
+                    default: att = highAtt; hp = highHp; break;
+                }
+            }
+        }
+        int pool = heal > 0 ? rnd.nextInt(heal + 1) : 0;
+        out.append(BATTLE).appendInt(att).append(SPACE).appendInt(hp).append(SPACE)
+                .appendInt(pool).append(NEWLINE);
+        if (shadow != null) shadow.handleBattle(att, hp, pool);
+    }
+
+    private void steal() {
+        int att = attack.sample(rnd) - 1, hp = health.sample(rnd) - 1;
+        out.append(STEAL).appendInt(att).append(SPACE).appendInt(hp).append(NEWLINE);
+        if (shadow != null) shadow.handleStealCard(att, hp);
+    }
+
+    private int pickClass() {
+        int r = rnd.nextInt(classes[3]);
+        for (int k = 0; k < 4; k++) if (r < classes[k]) return k + 1;
+        return 4;
+    }
+
+    private int classOf(int att, int hp) {
+        deck.findOptimalBattleCard(att, hp);
+        return deck.getLastPickPriority();
+    }
+
+    // ----- value distributions -----
+    static abstract class Dist {
+        abstract int sample(Random r);
+        abstract int max();
+
+        static Dist parse(String spec) {
+            String[] p = spec.split(":");
+            switch (p[0]) {
+                case "uniform": return new Uniform(Integer.parseInt(p[1]), Integer.parseInt(p[2]));
+                case "zipf": return new Zipf((int) Double.parseDouble(p[1]), Double.parseDouble(p[2]));
+                case "clustered": return new Clustered(Integer.parseInt(p[1]), Integer.parseInt(p[2]));
+                default: throw new IllegalArgumentException("Unknown distribution: " + spec);
+            }
+        }
+    }
+
+    static final class Uniform extends Dist {
+        final int lo, hi;
+        Uniform(int lo, int hi) { this.lo = lo; this.hi = hi; }
+        int sample(Random r) { return lo + r.nextInt(hi - lo + 1); }
+        int max() { return hi; }
+    }
+
+    // P(k) ~ 1/k^s over 1..n, sampled by binary search over the cumulative table
+    static final class Zipf extends Dist {
+        final double[] cdf;
+        Zipf(int n, double s) {
+            cdf = new double[n];
+            double sum = 0;
+            for (int k = 1; k <= n; k++) { sum += 1.0 / Math.pow(k, s); cdf[k - 1] = sum; }
+            for (int k = 0; k < n; k++) cdf[k] /= sum;
+        }
+        int sample(Random r) {
+            double u = r.nextDouble();
+            int lo = 0, hi = cdf.length - 1;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (cdf[mid] < u) lo = mid + 1; else hi = mid;
+            }
+            return lo + 1;
+        }
+        int max() { return cdf.length; }
+    }
+
+    // A few band centres; values land within +-2% of one of them
+    static final class Clustered extends Dist {
+        final int[] centres;
+        final int spread, hi;
+        Clustered(int k, int hi) {
+            this.hi = hi;
+            Random seeded = new Random(k * 31L + hi);
+            centres = new int[k];
+            for (int i = 0; i < k; i++) centres[i] = 1 + seeded.nextInt(hi);
+            spread = Math.max(1, hi / 50);
+        }
+        int sample(Random r) {
+            int v = centres[r.nextInt(centres.length)] + r.nextInt(2 * spread + 1) - spread;
+            return Math.max(1, Math.min(hi, v));
+        }
+        int max() { return hi; }
+    }
+
+    private static final OutputStream NULL_STREAM = new OutputStream() {
+        @Override public void write(int b) { }
+        @Override public void write(byte[] b, int off, int len) { }
+    };
+
+    public static void main(String[] args) throws IOException {
+        String outFile = null;
+        long commands = 1000000, initial = 0, seed = 1;
+        int[] mix = { 35, 45, 8, 8, 4 };
+        double growth = 0;
+        int[] classes = null;
+        Dist attack = Dist.parse("uniform:1:1000"), health = Dist.parse("uniform:1:1000");
+        int heal = 0, names = 1000;
+        boolean simulate = true;
+
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String v = args[i + 1];
+            switch (args[i]) {
+                case "-out": outFile = v; break;
+                case "-commands": commands = (long) Double.parseDouble(v); break;
+                case "-seed": seed = Long.parseLong(v); break;
+                case "-initial": initial = (long) Double.parseDouble(v); break;
+                case "-mix": mix = parseInts(v, 5); break;
+                case "-growth": growth = Double.parseDouble(v); break;
+                case "-attack": attack = Dist.parse(v); break;
+                case "-health": health = Dist.parse(v); break;
+                case "-classes": {
+                    classes = parseInts(v, 4);
+                    for (int k = 1; k < 4; k++) classes[k] += classes[k - 1];
+                    break;
+                }
+                case "-heal": heal = Integer.parseInt(v); break;
+                case "-names": names = Integer.parseInt(v); break;
+                case "-simulate": simulate = Boolean.parseBoolean(v); break;
+                default:
+                    System.out.println("Unknown option: " + args[i]);
+                    return;
+            }
+        }
+        if (outFile == null) {
+            System.out.println("Usage: java WorkloadGenerator -out <file> [options]");
+            return;
+        }
+        if (!simulate && (growth > 0 || classes != null)) {
+            System.out.println("-growth and -classes need -simulate true");
+            return;
+        }
+
+        WorkloadGenerator gen = new WorkloadGenerator(seed, attack, health, mix, growth, classes,
+                heal, names, simulate, new FileOutputStream(outFile));
+        gen.generate(commands, initial);
+    }
+
+    private static int[] parseInts(String v, int n) {
+        String[] p = v.split(",");
+        if (p.length != n) throw new IllegalArgumentException("Expected " + n + " values: " + v);
+        int[] out = new int[n];
+        for (int i = 0; i < n; i++) out[i] = Integer.parseInt(p[i]);
+        return out;
+    }
+}
@@ -0,0 +1,123 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Write stage of the pipelined mode: an OutputStream whose write() only
+ * copies into a preallocated byte ring, while a writer thread drains the
+ * ring into the real stream. The engine thread (through its ResponseSink)
+ * therefore never blocks on the file system unless the ring is full.
+ *
+ * Like the command ring in CommandPipeline this is a single-producer /
+ * single-consumer queue that shares nothing but two byte counters. flush()
+ * does not wait for the disk, sync() does (checkpoints use it so a
+ * snapshot never counts bytes that are not in the file yet), and close()
+ * drains the ring, stops the writer and closes the real stream. A write
+ * error on the writer thread is rethrown by the next write, sync or close.
+ */
+public class AsyncOutputStream extends OutputStream {
+    private static final int CAPACITY = 1 << 22; // bytes, power of two
+    private static final int MASK = CAPACITY - 1;
+
+    private final OutputStream out;
+    private final byte[] ring = new byte[CAPACITY];
+    private final AtomicLong written = new AtomicLong();  // bytes handed over by the producer
+    private final AtomicLong drained = new AtomicLong();  // bytes passed on by the writer
+    private long cachedDrained;                           // producer's view of drained
+    private final Thread writer;
+    private volatile boolean closing;
+    private volatile IOException failure;
+
+    public AsyncOutputStream(OutputStream out) {
+        this.out = out;
+        this.writer = new Thread(this::drain, "nightpass-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    // ----- producer side -----
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[] { (byte) b }, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        long w = written.get();
+        while (len > 0) {
+            for (int round = 0; w - cachedDrained == CAPACITY; round++) {
+                check();
+                cachedDrained = drained.get();
+                if (w - cachedDrained == CAPACITY) CommandPipeline.idle(round);
+            }
+            int s = (int) w & MASK;
+            int n = (int) Math.min(len, Math.min(CAPACITY - (w - cachedDrained), CAPACITY - s));
+            System.arraycopy(b, off, ring, s, n);
+            off += n;
+            len -= n;
+            w += n;
+            written.lazySet(w); // ordered after the copy
+        }
+    }
+
+    // The bytes are already handed over; the writer flushes as it drains
+    @Override
+    public void flush() throws IOException {
+        check();
+    }
+
+    // Wait until everything written so far has reached the underlying stream
+    public void sync() throws IOException {
+        long w = written.get();
+        for (int round = 0; drained.get() < w; round++) {
+            check();
+            CommandPipeline.idle(round);
+        }
+        check();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closing) return;
+        sync();
+        closing = true;
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        out.close();
+        check();
+    }
+
+    private void check() throws IOException {
+        IOException e = failure;
+        if (e != null) throw new IOException("Output writer failed", e);
+    }
+
+    // ----- writer thread -----
+    private void drain() {
+        long d = drained.get();
+        try {
+            for (int round = 0; ; round++) {
+                long w = written.get();
+                if (w == d) {
+                    if (closing) break;
+                    CommandPipeline.idle(round);
+                    continue;
+                }
+                round = 0;
+                while (d < w) {
+                    int s = (int) d & MASK;
+                    int n = (int) Math.min(w - d, CAPACITY - s);
+                    out.write(ring, s, n);
+                    d += n;
+                }
+                out.flush();
+                drained.lazySet(d);
+            }
+        } catch (IOException e) {
+            failure = e;
+        }
+    }
+}
@@ -0,0 +1,182 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Batch mode: plays many independent games in one JVM.
+ *
+ *   java BatchRunner <input-dir | manifest> <output-dir>
+ *
+ * With a directory, every regular file in it is one game and its output
+ * goes to output-dir under the same name. A manifest lists one game per
+ * line: "input [output]" (output defaults to the input's name in
+ * output-dir; blank lines and lines starting with # are skipped).
+ *
+ * Each game gets its own GameManager and deck and streams its input and
+ * output like Main, so a game holds no more than its deck plus two I/O
+ * buffers. Games run on a ForkJoinPool with one worker per core
+ * (-Dnightpass.batch.threads to override); at most that many games are in
+ * memory at once. All games intern card names into one shared NameTable,
+ * so a name that recurs across the batch is stored once. The usual
+ * -Dnightpass.engine / check / bulkdraw properties apply to every game. At
+ * the end the runner prints one line per failed game and the aggregate
+ * throughput.
+ */
+public class BatchRunner {
+    private static final class Game {
+        final File input, output;
+        long commands, bytesOut, nanos;
+        String error;
+
+        Game(File input, File output) {
+            this.input = input;
+            this.output = output;
+        }
+    }
+
+    private final String engine;
+    private final int cacheEntries = Integer.getInteger("nightpass.cache", 0);
+    private final int checkLevel;
+    private final boolean bulkDraws;
+    private final NameTable names = new NameTable(); // shared by all games
+
+    public BatchRunner(String engine, int checkLevel, boolean bulkDraws) {
+        DeckIndex.create(engine); // fail fast on an unknown engine
+        this.engine = engine;
+        this.checkLevel = checkLevel;
+        this.bulkDraws = bulkDraws;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length != 2) {
+            System.out.println("Usage: java BatchRunner <input-dir | manifest> <output-dir>");
+            return;
+        }
+        File source = new File(args[0]);
+        File outDir = new File(args[1]);
+        if (!outDir.isDirectory() && !outDir.mkdirs()) {
+            System.out.println("Cannot create output directory: " + outDir);
+            return;
+        }
+        int threads = Integer.getInteger("nightpass.batch.threads", Runtime.getRuntime().availableProcessors());
+
+        BatchRunner runner;
+        Game[] games;
+        try {
+            runner = new BatchRunner(System.getProperty("nightpass.engine", "nested"),
+                    Deck.parseCheckLevel(System.getProperty("nightpass.check")),
+                    !"false".equals(System.getProperty("nightpass.bulkdraw")));
+            games = source.isDirectory() ? fromDirectory(source, outDir) : fromManifest(source, outDir);
+        } catch (IllegalArgumentException | IOException e) {
+            System.out.println(e.getMessage());
+            return;
+        }
+
+        long t0 = System.nanoTime();
+        runner.runAll(games, threads);
+        double seconds = (System.nanoTime() - t0) / 1e9;
+
+        long commands = 0, bytes = 0, cpuNanos = 0;
+        int failed = 0;
+        for (Game g : games) {
+            commands += g.commands;
+            bytes += g.bytesOut;
+            cpuNanos += g.nanos;
+            if (g.error != null) {
+                failed++;
+                System.out.println("FAILED " + g.input + ": " + g.error);
+            }
+        }
+        System.out.printf("%d games (%d failed) on %d threads in %.2f s: %.1f games/s, %.0f commands/s, %.1f MB/s out, parallel speedup %.1fx%n",
+                games.length, failed, threads, seconds, games.length / seconds, commands / seconds,
+                bytes / seconds / 1e6, seconds > 0 ? cpuNanos / 1e9 / seconds : 0.0);
+    }
+
+    // Play all games, at most threads at a time, and wait for the last one
+    private void runAll(Game[] games, int threads) {
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            ForkJoinTask<?>[] tasks = new ForkJoinTask<?>[games.length];
+            for (int i = 0; i < games.length; i++) {
+                Game g = games[i];
+                tasks[i] = pool.submit(() -> play(g));
+            }
+            for (ForkJoinTask<?> t : tasks) t.join();
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private void play(Game g) {
+        long t0 = System.nanoTime();
+        try (FileInputStream in = new FileInputStream(g.input);
+             ResponseSink out = new ResponseSink(new FileOutputStream(g.output))) {
+            CommandReader reader = new CommandReader(in);
+            GameManager game = new GameManager(out, DeckIndex.create(engine, cacheEntries), names);
+            game.setCheckLevel(checkLevel);
+            game.setBulkDraws(bulkDraws);
+
+            int command;
+            while ((command = reader.next()) != CommandReader.EOF) {
+                if (!game.handleCommand(command, reader)) {
+                    g.error = "Invalid command: " + reader.token();
+                    break;
+                }
+                g.commands++;
+                out.endCommand();
+            }
+            out.flush();
+            g.bytesOut = out.position();
+        } catch (IOException | RuntimeException e) {
+            g.error = e.toString();
+        }
+        g.nanos = System.nanoTime() - t0;
+    }
+
+    private static Game[] fromDirectory(File dir, File outDir) throws IOException {
+        File[] files = dir.listFiles(File::isFile);
+        if (files == null) throw new IOException("Cannot list " + dir);
+        // name order, so runs and reports are reproducible
+        for (int i = 1; i < files.length; i++) {
+            File f = files[i];
+            int j = i - 1;
+            while (j >= 0 && files[j].getName().compareTo(f.getName()) > 0) {
+                files[j + 1] = files[j];
+                j--;
+            }
+            files[j + 1] = f;
+        }
+        Game[] games = new Game[files.length];
+        for (int i = 0; i < files.length; i++) games[i] = new Game(files[i], new File(outDir, files[i].getName()));
+        return games;
+    }
+
+    private static Game[] fromManifest(File manifest, File outDir) throws IOException {
+        ArrayList<Game> games = new ArrayList<>();
+        File base = manifest.getAbsoluteFile().getParentFile();
+        try (BufferedReader r = new BufferedReader(new FileReader(manifest))) {
+            String line;
+            while ((line = r.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) continue;
+                String[] parts = line.split("\\s+");
+                File input = resolve(base, parts[0]);
+                File output = parts.length > 1 ? resolve(base, parts[1]) : new File(outDir, input.getName());
+                games.add(new Game(input, output));
+            }
+        }
+        return games.toArray(new Game[0]);
+    }
+
+    // Manifest paths are relative to the manifest's directory
+    private static File resolve(File base, String path) {
+        File f = new File(path);
+        return f.isAbsolute() ? f : new File(base, path);
+    }
+}
@@ -0,0 +1,42 @@
+/**
+ * The scoring and stat rules of a battle, shared by GameManager's real
+ * battles and its lookahead. All methods are pure functions of the played
+ * card's stats and the Stranger's.
+ */
+public final class BattleRules {
+    private BattleRules() { }
+
+    // Priority class 1..4 of a card: 1 survives and kills, 2 survives, 3 kills, 4 neither
+    public static int priorityClass(int aCur, int hCur, int strangerAttack, int strangerHealth) {
+        boolean survives = hCur > strangerAttack;
+        boolean kills = aCur >= strangerHealth;
+        if (survives && kills) return 1;
+        if (survives) return 2;
+        if (kills) return 3;
+        return 4;
+    }
+
+    // Survivor points: 2 if the Stranger is defeated, 1 if damaged
+    public static int survivorPoints(int aCur, int strangerHealth) {
+        int left = strangerHealth - aCur;
+        if (left <= 0) return 2;
+        return left < strangerHealth ? 1 : 0;
+    }
+
+    // Stranger points: 2 if the card dies, 1 if it survives below its base health
+    public static int strangerPoints(int hCur, int hBase, int strangerAttack) {
+        int left = hCur - strangerAttack;
+        if (left <= 0) return 2;
+        return left < hBase ? 1 : 0;
+    }
+
+    // Attack of a card that survives with health hLeft: scaled by the health it kept, at least 1
+    public static int returnedAttack(int aBase, int hBase, int hLeft) {
+        return Math.max(1, (int) ((long) aBase * hLeft / hBase));
+    }
+
+    // Base attack of a revived card: 10% lost, at least 1 remains
+    public static int revivedAttack(int aBase) {
+        return Math.max(1, aBase - aBase / 10);
+    }
+}
@@ -0,0 +1,235 @@
+/**
+ * DeckIndex decorator that remembers recent battle and steal picks.
+ *
+ * Inputs often repeat the same Stranger (attack, health) or steal limits.
+ * Every pick is the minimum of the deck under a fixed ordering (P1..P4 or
+ * the steal order, see DeckIndex), so a remembered answer stays right until
+ * either that card leaves the deck or a card that would beat it arrives.
+ *
+ * The cache is a direct-mapped table keyed by (kind, x, y). Each entry holds
+ * the answer and the deck version at which it was last known to be right.
+ * Every mutation bumps the version and is written to a small ring log
+ * (the card, plus the new and old keys of inserts and moves). A lookup
+ * whose entry is behind the current version replays the logged mutations
+ * since then:
+ *  - a delete only matters if it removed the cached card;
+ *  - an insert only matters if the new card is eligible and beats the
+ *    cached card (or the cached answer was "none");
+ *  - a move of the cached card keeps it the answer when its new key is
+ *    still eligible and ranks ahead of the old one (a battle card that
+ *    survives as P1 with less health, say), since it then still beats
+ *    every other card.
+ * If nothing mattered the entry is re-stamped and returned without touching
+ * the trees; otherwise, or when the entry is older than the log, the pick
+ * is recomputed by the wrapped engine. Bulk loads clear the whole table.
+ */
+public class CachingDeck implements DeckIndex {
+    private static final byte EMPTY = 0, BATTLE = 1, STEAL = 2;   // entry kinds
+    private static final byte INSERT = 0, DELETE = 1, MOVE = 2;   // log record kinds
+    private static final int LOG_SIZE = 32; // mutations a stale entry can be replayed over (power of two)
+
+    private final DeckIndex deck;
+    private final int mask;
+
+    // cache table; the answer's key is copied so the log can be replayed against it
+    private final byte[] kind;
+    private final int[] keyX, keyY;
+    private final Card[] answer;
+    private final int[] ansA, ansH, ansOrd;
+    private final byte[] priority;
+    private final long[] stamp;
+
+    // mutation log: record v (1-based version) lives at slot v & (LOG_SIZE-1);
+    // logA/H/Ord is the inserted (or new) key, logOld* the key a moved card left
+    private final byte[] logKind = new byte[LOG_SIZE];
+    private final Card[] logCard = new Card[LOG_SIZE];
+    private final int[] logA = new int[LOG_SIZE], logH = new int[LOG_SIZE], logOrd = new int[LOG_SIZE];
+    private final int[] logOldA = new int[LOG_SIZE], logOldH = new int[LOG_SIZE], logOldOrd = new int[LOG_SIZE];
+    private long version;
+
+    private int lastPickPriority;
+    private long hits, revalidated, misses;
+
+    // entries is rounded up to a power of two
+    public CachingDeck(DeckIndex deck, int entries) {
+        int size = Integer.highestOneBit(Math.max(1, entries - 1)) << 1;
+        this.deck = deck;
+        this.mask = size - 1;
+        this.kind = new byte[size];
+        this.keyX = new int[size];
+        this.keyY = new int[size];
+        this.answer = new Card[size];
+        this.ansA = new int[size];
+        this.ansH = new int[size];
+        this.ansOrd = new int[size];
+        this.priority = new byte[size];
+        this.stamp = new long[size];
+    }
+
+    public long getHits() { return hits; }               // answered at the current version
+    public long getRevalidated() { return revalidated; } // answered after replaying the log
+    public long getMisses() { return misses; }
+
+    // ----- mutations -----
+    public void insert(Card c) {
+        deck.insert(c);
+        int s = log(INSERT, c);
+        logA[s] = c.getACur(); logH[s] = c.getHCur(); logOrd[s] = c.getOrder();
+    }
+
+    public void delete(Card c) {
+        deck.delete(c);
+        log(DELETE, c);
+    }
+
+    public void reposition(Card c, int newA, int newH, int newOrder) {
+        int oldA = c.getACur(), oldH = c.getHCur(), oldOrd = c.getOrder();
+        deck.reposition(c, newA, newH, newOrder);
+        int s = log(MOVE, c);
+        logA[s] = newA; logH[s] = newH; logOrd[s] = newOrder;
+        logOldA[s] = oldA; logOldH[s] = oldH; logOldOrd[s] = oldOrd;
+    }
+
+    public void loadSorted(Card[] cards, int n) {
+        deck.loadSorted(cards, n);
+        clear();
+    }
+
+    public void bulkInsert(Card[] cards, int n) {
+        deck.bulkInsert(cards, n);
+        clear();
+    }
+
+    private int log(byte k, Card c) {
+        int s = (int) (++version) & (LOG_SIZE - 1);
+        logKind[s] = k;
+        logCard[s] = c;
+        return s;
+    }
+
+    private void clear() {
+        for (int i = 0; i <= mask; i++) {
+            kind[i] = EMPTY;
+            answer[i] = null;
+        }
+    }
+
+    // ----- cached picks -----
+    public Card findOptimalBattleCard(int strangerAttack, int strangerHealth) {
+        int i = lookup(BATTLE, strangerAttack, strangerHealth);
+        if (i >= 0) {
+            lastPickPriority = priority[i];
+            return answer[i];
+        }
+        Card c = deck.findOptimalBattleCard(strangerAttack, strangerHealth);
+        lastPickPriority = deck.getLastPickPriority();
+        store(BATTLE, strangerAttack, strangerHealth, c, lastPickPriority);
+        return c;
+    }
+
+    public int getLastPickPriority() { return lastPickPriority; }
+
+    public Card findBestStealCandidate(int attackLimit, int healthLimit) {
+        int i = lookup(STEAL, attackLimit, healthLimit);
+        if (i >= 0) return answer[i];
+        Card c = deck.findBestStealCandidate(attackLimit, healthLimit);
+        store(STEAL, attackLimit, healthLimit, c, 0);
+        return c;
+    }
+
+    /**
+     * Slot holding a still-valid answer for (k, x, y), or -1. Replaying a
+     * record: an insert (or the new key of a moved card) invalidates if it
+     * beats the answer; the answer itself being deleted invalidates; the
+     * answer being moved keeps the entry only if the new key still qualifies
+     * and beats the old one, since it then beats every other card too.
+     */
+    private int lookup(byte k, int x, int y) {
+        int i = slot(k, x, y);
+        if (kind[i] != k || keyX[i] != x || keyY[i] != y) { misses++; return -1; }
+        long since = stamp[i];
+        if (since == version) { hits++; return i; }
+        if (version - since > LOG_SIZE) { misses++; return -1; }
+        Card cached = answer[i];
+        int prio = priority[i], a = ansA[i], h = ansH[i], ord = ansOrd[i];
+        for (long v = since + 1; v <= version; v++) {
+            int s = (int) v & (LOG_SIZE - 1);
+            boolean stale;
+            if (cached != null && logCard[s] == cached) {
+                // the answer itself was deleted or moved
+                stale = logKind[s] != MOVE || !beats(k, x, y, prio, a, h, ord, logA[s], logH[s], logOrd[s]);
+                a = logA[s]; h = logH[s]; ord = logOrd[s];
+            } else {
+                stale = logKind[s] != DELETE
+                        && (cached == null ? qualifies(k, x, y, logA[s], logH[s])
+                                           : beats(k, x, y, prio, a, h, ord, logA[s], logH[s], logOrd[s]));
+            }
+            if (stale) { misses++; return -1; }
+        }
+        ansA[i] = a; ansH[i] = h; ansOrd[i] = ord;
+        stamp[i] = version;
+        revalidated++;
+        return i;
+    }
+
+    private void store(byte k, int x, int y, Card c, int prio) {
+        int i = slot(k, x, y);
+        kind[i] = k;
+        keyX[i] = x;
+        keyY[i] = y;
+        answer[i] = c;
+        if (c != null) { ansA[i] = c.getACur(); ansH[i] = c.getHCur(); ansOrd[i] = c.getOrder(); }
+        priority[i] = (byte) prio;
+        stamp[i] = version;
+    }
+
+    private int slot(byte k, int x, int y) {
+        int h = (x * 0x9E3779B1) ^ (y * 0x85EBCA77) ^ k;
+        return (h ^ (h >>> 15)) & mask;
+    }
+
+    // Could a card (a, h) be the answer at all? Any card qualifies for a battle (P4)
+    private static boolean qualifies(byte k, int x, int y, int a, int h) {
+        return k == BATTLE || (a > x && h > y);
+    }
+
+    /**
+     * Would a card (a, h, ord) be picked over the answer (ca, ch, co) of
+     * class prio? Battle with Stranger (attack x, health y): a better class
+     * wins, then P1/P3 want the smallest attack and P2/P4 the largest, then
+     * the smallest (health, order). Steal with limits (x, y): smallest
+     * (attack, health, order) among cards above both limits.
+     */
+    private static boolean beats(byte k, int x, int y, int prio, int ca, int ch, int co, int a, int h, int ord) {
+        if (k == BATTLE) {
+            boolean survives = h > x, kills = a >= y;
+            int p = survives ? (kills ? 1 : 2) : (kills ? 3 : 4);
+            if (p != prio) return p < prio;
+            if (a != ca) return (p == 1 || p == 3) ? a < ca : a > ca;
+        } else {
+            if (a <= x || h <= y) return false;
+            if (a != ca) return a < ca;
+        }
+        if (h != ch) return h < ch;
+        return ord < co;
+    }
+
+    // ----- everything else goes straight to the wrapped engine -----
+    public int getCardCount() { return deck.getCardCount(); }
+    public void copyInOrder(Card[] out) { deck.copyInOrder(out); }
+
+    public int countRange(int aLo, int aHi, int hLo, int hHi) { return deck.countRange(aLo, aHi, hLo, hHi); }
+    public Card kthByAttack(int k) { return deck.kthByAttack(k); }
+    public Card kthByHealth(int k) { return deck.kthByHealth(k); }
+    public long ceilingAttack(int a) { return deck.ceilingAttack(a); }
+    public long ceilingHealth(int h) { return deck.ceilingHealth(h); }
+
+    public void setCheckLevel(int level) { deck.setCheckLevel(level); }
+    public void verifyCount() { deck.verifyCount(); }
+
+    public int getBandCount() { return deck.getBandCount(); }
+    public int getAttackHeight() { return deck.getAttackHeight(); }
+    public int getMaxBandHeight() { return deck.getMaxBandHeight(); }
+    public long getAttackRotations() { return deck.getAttackRotations(); }
+    public long getHealthRotations() { return deck.getHealthRotations(); }
+}
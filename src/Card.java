@@ -1,5 +1,5 @@
 public class Card {
-    private String name;
+    private int nameId; // id in the game's NameTable
     private final int A_init;
     private final int H_init;
     private int A_base;
@@ -8,9 +8,9 @@ public class Card {
     private int H_cur;
     private int order;
 
-    // Constructor: initializes card with given name, attack, health, and entry order
-    public Card(String card_name, int attack_init, int health_init, int entry_order) {
-        this.name = card_name;
+    // Constructor: initializes card with given name id, attack, health, and entry order
+    public Card(int name_id, int attack_init, int health_init, int entry_order) {
+        this.nameId = name_id;
         this.A_init = attack_init;
         this.H_init = health_init;
         this.A_base = attack_init;
@@ -28,7 +28,7 @@ public class Card {
     public int getHBase() { return H_base; }
     public int getHCur() { return H_cur; }
     public int getOrder() { return order; }
-    public String getName() { return name; }
+    public int getNameId() { return nameId; }
 
     //Setters (mutators for updating state)
     public void setABase(int attack_base) { A_base = attack_base; }
@@ -36,5 +36,5 @@ public class Card {
     public void setHBase(int health_base) { H_base = health_base; }
     public void setHCur(int health_cur) { H_cur = health_cur; }
     public void setOrder(int order) { this.order = order; }
-    public void setName(String name) { this.name = name; }
+    public void setNameId(int nameId) { this.nameId = nameId; }
 }
\ No newline at end of file
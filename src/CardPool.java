@@ -0,0 +1,682 @@
+/**
+ * Struct-of-arrays storage behind Deck's card-pool mode.
+ *
+ * Same two-level index as Deck (attack-band AVL whose nodes own a health AVL),
+ * but every node lives in one flat int[] per level and is addressed by an int
+ * handle (the node's offset into that array). The keys a node is ordered by
+ * (A_cur for bands, H_cur/order for cards) are copied into the node, so tree
+ * walks only touch the int arrays; the Card object is looked up once, when a
+ * search returns. Freed slots are chained into a free list and reused.
+ *
+ * Handle 0 is reserved as "no node".
+ */
+final class CardPool {
+    // ----- Health-node layout (one card per node) -----
+    private static final int H_KEY = 0;    // H_cur
+    private static final int H_ORD = 1;    // order
+    private static final int H_LEFT = 2;   // also the free-list link
+    private static final int H_RIGHT = 3;
+    private static final int H_HEIGHT = 4;
+    private static final int H_MIN = 5;    // subtree health range
+    private static final int H_MAX = 6;
+    private static final int H_SIZE = 7;   // subtree size (cards)
+    private static final int H_SHIFT = 3;  // stride 8
+    private static final int H_STRIDE = 1 << H_SHIFT;
+
+    // ----- Attack-band layout -----
+    private static final int A_KEY = 0;    // attack key of this band
+    private static final int A_ROOT = 1;   // root handle of the band's health tree
+    private static final int A_BMIN = 2;   // min/max H inside this band
+    private static final int A_BMAX = 3;
+    private static final int A_SMINH = 4;  // min/max H in whole subtree
+    private static final int A_SMAXH = 5;
+    private static final int A_SMINA = 6;  // min/max A in whole subtree
+    private static final int A_SMAXA = 7;
+    private static final int A_LEFT = 8;   // also the free-list link
+    private static final int A_RIGHT = 9;
+    private static final int A_HEIGHT = 10;
+    private static final int A_SIZE = 11;  // total cards in subtree
+    private static final int A_STRIDE = 12;
+
+    private int[] hn;
+    private Card[] cards; // indexed by (health handle >> H_SHIFT)
+    private int hTop, hFree;
+
+    private int[] an;
+    private int aTop, aFree;
+
+    private int root;
+    private int cardCount;
+    private int lastPickPriority;
+    private boolean removed; // set by the delete recursions
+
+    // Structural counters, see Deck's statistics getters
+    private int bandCount;
+    private long aRotations, hRotations;
+
+    CardPool() {
+        this(1024);
+    }
+
+    CardPool(int initialCards) {
+        int n = Math.max(16, initialCards);
+        hn = new int[n * H_STRIDE];
+        cards = new Card[n];
+        hTop = H_STRIDE; // slot 0 is the null handle
+        an = new int[n * A_STRIDE];
+        aTop = A_STRIDE;
+    }
+
+    int getCardCount() { return cardCount; }
+    int getLastPickPriority() { return lastPickPriority; }
+    int summarySize() { return root == 0 ? 0 : an[root + A_SIZE]; }
+    int getBandCount() { return bandCount; }
+    long getAttackRotations() { return aRotations; }
+    long getHealthRotations() { return hRotations; }
+    int getAttackHeight() { return hA(root); }
+    int getMaxBandHeight() { return maxBandHeight(root); }
+
+    private int maxBandHeight(int n) {
+        if (n == 0) return 0;
+        int m = Math.max(maxBandHeight(an[n + A_LEFT]), maxBandHeight(an[n + A_RIGHT]));
+        return Math.max(m, hH(an[n + A_ROOT]));
+    }
+
+    void insert(Card c) {
+        root = aInsert(root, c.getACur(), c.getHCur(), c.getOrder(), c);
+        cardCount++;
+    }
+
+    // Returns whether the card was there
+    boolean delete(Card c) {
+        removed = false;
+        root = aDelete(root, c.getACur(), c.getHCur(), c.getOrder());
+        if (removed) cardCount--;
+        return removed;
+    }
+
+    // See Deck.reposition: same band = re-seat inside the band's health tree only
+    void reposition(Card c, int newA, int newH, int newOrder) {
+        if (newA != c.getACur()) {
+            delete(c);
+            c.setHCur(newH); c.setACur(newA); c.setOrder(newOrder);
+            insert(c);
+            return;
+        }
+        removed = false;
+        if (!reseat(root, newA, c.getHCur(), c.getOrder(), newH, newOrder, c)) {
+            c.setHCur(newH); c.setOrder(newOrder);
+            insert(c);
+            return;
+        }
+        if (!removed) cardCount++;
+        c.setHCur(newH); c.setOrder(newOrder);
+    }
+
+    // Find band a, move the card inside its health tree and refresh summaries on the way back
+    private boolean reseat(int n, int a, int h, int ord, int newH, int newOrd, Card c) {
+        if (n == 0) return false;
+        int key = an[n + A_KEY];
+        if (a != key) {
+            if (!reseat(an[n + (a < key ? A_LEFT : A_RIGHT)], a, h, ord, newH, newOrd, c)) return false;
+        } else {
+            int t = hDelete(an[n + A_ROOT], h, ord);
+            t = hInsert(t, newH, newOrd, c);
+            an[n + A_ROOT] = t;
+        }
+        updA(n);
+        return true;
+    }
+
+    // -------- slot management --------
+    private int allocH(int h, int ord, Card c) {
+        int n;
+        if (hFree != 0) {
+            n = hFree;
+            hFree = hn[n + H_LEFT];
+        } else {
+            if (hTop == hn.length) growH();
+            n = hTop;
+            hTop += H_STRIDE;
+        }
+        hn[n + H_KEY] = h;
+        hn[n + H_ORD] = ord;
+        hn[n + H_LEFT] = 0;
+        hn[n + H_RIGHT] = 0;
+        hn[n + H_HEIGHT] = 1;
+        hn[n + H_MIN] = h;
+        hn[n + H_MAX] = h;
+        hn[n + H_SIZE] = 1;
+        cards[n >> H_SHIFT] = c;
+        return n;
+    }
+
+    private void freeH(int n) {
+        cards[n >> H_SHIFT] = null;
+        hn[n + H_LEFT] = hFree;
+        hFree = n;
+    }
+
+    private int allocA(int a, int h, int ord, Card c) {
+        int hRoot = allocH(h, ord, c); // may grow hn, never an
+        int n;
+        if (aFree != 0) {
+            n = aFree;
+            aFree = an[n + A_LEFT];
+        } else {
+            if (aTop == an.length) growA();
+            n = aTop;
+            aTop += A_STRIDE;
+        }
+        an[n + A_KEY] = a;
+        an[n + A_ROOT] = hRoot;
+        an[n + A_BMIN] = h;
+        an[n + A_BMAX] = h;
+        an[n + A_SMINH] = h;
+        an[n + A_SMAXH] = h;
+        an[n + A_SMINA] = a;
+        an[n + A_SMAXA] = a;
+        an[n + A_LEFT] = 0;
+        an[n + A_RIGHT] = 0;
+        an[n + A_HEIGHT] = 1;
+        an[n + A_SIZE] = 1;
+        bandCount++;
+        return n;
+    }
+
+    private void freeA(int n) {
+        bandCount--;
+        an[n + A_LEFT] = aFree;
+        aFree = n;
+    }
+
+    private void growH() {
+        int[] grownNodes = new int[hn.length * 2];
+        System.arraycopy(hn, 0, grownNodes, 0, hn.length);
+        hn = grownNodes;
+        Card[] grownCards = new Card[cards.length * 2];
+        System.arraycopy(cards, 0, grownCards, 0, cards.length);
+        cards = grownCards;
+    }
+
+    private void growA() {
+        int[] grown = new int[an.length * 2];
+        System.arraycopy(an, 0, grown, 0, an.length);
+        an = grown;
+    }
+
+    // -------- health tree --------
+    private int hH(int n) { return n == 0 ? 0 : hn[n + H_HEIGHT]; }
+
+    private void updH(int n) {
+        int l = hn[n + H_LEFT], r = hn[n + H_RIGHT];
+        int min = hn[n + H_KEY], max = min, size = 1;
+        if (l != 0) { min = Math.min(min, hn[l + H_MIN]); max = Math.max(max, hn[l + H_MAX]); size += hn[l + H_SIZE]; }
+        if (r != 0) { min = Math.min(min, hn[r + H_MIN]); max = Math.max(max, hn[r + H_MAX]); size += hn[r + H_SIZE]; }
+        hn[n + H_HEIGHT] = 1 + Math.max(hH(l), hH(r));
+        hn[n + H_MIN] = min;
+        hn[n + H_MAX] = max;
+        hn[n + H_SIZE] = size;
+    }
+
+    // Order by (H_cur, order), same as Deck.cmpH
+    private int cmpH(int h, int ord, int n) {
+        int nh = hn[n + H_KEY];
+        if (h != nh) return h < nh ? -1 : 1;
+        int no = hn[n + H_ORD];
+        return ord < no ? -1 : (ord == no ? 0 : 1);
+    }
+
+    private int rotHRight(int y) {
+        int x = hn[y + H_LEFT], t2 = hn[x + H_RIGHT];
+        hn[x + H_RIGHT] = y; hn[y + H_LEFT] = t2;
+        updH(y); updH(x);
+        return x;
+    }
+
+    private int rotHLeft(int x) {
+        int y = hn[x + H_RIGHT], t2 = hn[y + H_LEFT];
+        hn[y + H_LEFT] = x; hn[x + H_RIGHT] = t2;
+        updH(x); updH(y);
+        return y;
+    }
+
+    private int bfH(int n) { return n == 0 ? 0 : hH(hn[n + H_LEFT]) - hH(hn[n + H_RIGHT]); }
+
+    private int balH(int n) {
+        int bf = bfH(n);
+        if (bf > 1) {
+            if (bfH(hn[n + H_LEFT]) < 0) { hn[n + H_LEFT] = rotHLeft(hn[n + H_LEFT]); hRotations++; }
+            hRotations++;
+            return rotHRight(n);
+        }
+        if (bf < -1) {
+            if (bfH(hn[n + H_RIGHT]) > 0) { hn[n + H_RIGHT] = rotHRight(hn[n + H_RIGHT]); hRotations++; }
+            hRotations++;
+            return rotHLeft(n);
+        }
+        return n;
+    }
+
+    // Note: children are stored through a local because the recursion may grow hn/an
+    private int hInsert(int n, int h, int ord, Card c) {
+        if (n == 0) return allocH(h, ord, c);
+        if (cmpH(h, ord, n) < 0) { int t = hInsert(hn[n + H_LEFT], h, ord, c);  hn[n + H_LEFT] = t; }
+        else                     { int t = hInsert(hn[n + H_RIGHT], h, ord, c); hn[n + H_RIGHT] = t; }
+        updH(n);
+        return balH(n);
+    }
+
+    private int hMinNode(int n) {
+        while (n != 0 && hn[n + H_LEFT] != 0) n = hn[n + H_LEFT];
+        return n;
+    }
+
+    private int hDelete(int n, int h, int ord) {
+        if (n == 0) return 0;
+        int cmp = cmpH(h, ord, n);
+        if (cmp < 0) hn[n + H_LEFT] = hDelete(hn[n + H_LEFT], h, ord);
+        else if (cmp > 0) hn[n + H_RIGHT] = hDelete(hn[n + H_RIGHT], h, ord);
+        else {
+            removed = true;
+            int l = hn[n + H_LEFT], r = hn[n + H_RIGHT];
+            if (l == 0) { freeH(n); return r; }
+            if (r == 0) { freeH(n); return l; }
+            // two children: take over the successor's card, then drop the successor
+            int succ = hMinNode(r);
+            hn[n + H_KEY] = hn[succ + H_KEY];
+            hn[n + H_ORD] = hn[succ + H_ORD];
+            cards[n >> H_SHIFT] = cards[succ >> H_SHIFT];
+            hn[n + H_RIGHT] = hDelete(r, hn[n + H_KEY], hn[n + H_ORD]);
+        }
+        updH(n);
+        return balH(n);
+    }
+
+    // First node with H >= keyH (the tree is ordered by (H, order))
+    private int hLowerBound(int n, int keyH) {
+        int ans = 0;
+        while (n != 0) {
+            if (hn[n + H_KEY] >= keyH) {
+                ans = n;
+                n = hn[n + H_LEFT];
+            } else {
+                n = hn[n + H_RIGHT];
+            }
+        }
+        return ans;
+    }
+
+    private Card cardAt(int h) { return h == 0 ? null : cards[h >> H_SHIFT]; }
+
+    // -------- attack tree --------
+    private int hA(int n) { return n == 0 ? 0 : an[n + A_HEIGHT]; }
+
+    private void updA(int n) {
+        int l = an[n + A_LEFT], r = an[n + A_RIGHT];
+        int a = an[n + A_KEY];
+        int hRoot = an[n + A_ROOT];
+        int bMin, bMax, size;
+        if (hRoot == 0) { bMin = Integer.MAX_VALUE; bMax = Integer.MIN_VALUE; size = 0; }
+        else { bMin = hn[hRoot + H_MIN]; bMax = hn[hRoot + H_MAX]; size = hn[hRoot + H_SIZE]; }
+        an[n + A_BMIN] = bMin;
+        an[n + A_BMAX] = bMax;
+
+        int minH = bMin, maxH = bMax, minA = a, maxA = a;
+        if (l != 0) {
+            minH = Math.min(minH, an[l + A_SMINH]); maxH = Math.max(maxH, an[l + A_SMAXH]);
+            minA = Math.min(minA, an[l + A_SMINA]); maxA = Math.max(maxA, an[l + A_SMAXA]);
+            size += an[l + A_SIZE];
+        }
+        if (r != 0) {
+            minH = Math.min(minH, an[r + A_SMINH]); maxH = Math.max(maxH, an[r + A_SMAXH]);
+            minA = Math.min(minA, an[r + A_SMINA]); maxA = Math.max(maxA, an[r + A_SMAXA]);
+            size += an[r + A_SIZE];
+        }
+        an[n + A_SMINH] = minH;
+        an[n + A_SMAXH] = maxH;
+        an[n + A_SMINA] = minA;
+        an[n + A_SMAXA] = maxA;
+        an[n + A_HEIGHT] = 1 + Math.max(hA(l), hA(r));
+        an[n + A_SIZE] = size;
+    }
+
+    private int rotARight(int y) {
+        int x = an[y + A_LEFT], t2 = an[x + A_RIGHT];
+        an[x + A_RIGHT] = y; an[y + A_LEFT] = t2;
+        updA(y); updA(x);
+        return x;
+    }
+
+    private int rotALeft(int x) {
+        int y = an[x + A_RIGHT], t2 = an[y + A_LEFT];
+        an[y + A_LEFT] = x; an[x + A_RIGHT] = t2;
+        updA(x); updA(y);
+        return y;
+    }
+
+    private int bfA(int n) { return n == 0 ? 0 : hA(an[n + A_LEFT]) - hA(an[n + A_RIGHT]); }
+
+    private int balA(int n) {
+        int bf = bfA(n);
+        if (bf > 1) {
+            if (bfA(an[n + A_LEFT]) < 0) { an[n + A_LEFT] = rotALeft(an[n + A_LEFT]); aRotations++; }
+            aRotations++;
+            return rotARight(n);
+        }
+        if (bf < -1) {
+            if (bfA(an[n + A_RIGHT]) > 0) { an[n + A_RIGHT] = rotARight(an[n + A_RIGHT]); aRotations++; }
+            aRotations++;
+            return rotALeft(n);
+        }
+        return n;
+    }
+
+    private int aInsert(int n, int a, int h, int ord, Card c) {
+        if (n == 0) return allocA(a, h, ord, c);
+        int key = an[n + A_KEY];
+        int t;
+        if (a < key) { t = aInsert(an[n + A_LEFT], a, h, ord, c); an[n + A_LEFT] = t; }
+        else if (a > key) { t = aInsert(an[n + A_RIGHT], a, h, ord, c); an[n + A_RIGHT] = t; }
+        else { t = hInsert(an[n + A_ROOT], h, ord, c); an[n + A_ROOT] = t; }
+        updA(n);
+        return balA(n);
+    }
+
+    private int minANode(int n) {
+        while (n != 0 && an[n + A_LEFT] != 0) n = an[n + A_LEFT];
+        return n;
+    }
+
+    // Delete a card; if its band becomes empty, remove the band node
+    private int aDelete(int n, int a, int h, int ord) {
+        if (n == 0) return 0;
+        int key = an[n + A_KEY];
+        if (a < key) an[n + A_LEFT] = aDelete(an[n + A_LEFT], a, h, ord);
+        else if (a > key) an[n + A_RIGHT] = aDelete(an[n + A_RIGHT], a, h, ord);
+        else {
+            an[n + A_ROOT] = hDelete(an[n + A_ROOT], h, ord);
+            if (an[n + A_ROOT] == 0) return removeBand(n);
+        }
+        updA(n);
+        return balA(n);
+    }
+
+    // Unlink band node n (its health tree is already empty or moved away)
+    private int removeBand(int n) {
+        int l = an[n + A_LEFT], r = an[n + A_RIGHT];
+        if (l == 0) { freeA(n); return r; }
+        if (r == 0) { freeA(n); return l; }
+        // two children: replace by successor band, moving its whole health tree
+        int succ = minANode(r);
+        an[n + A_KEY] = an[succ + A_KEY];
+        an[n + A_ROOT] = an[succ + A_ROOT];
+        an[n + A_RIGHT] = aDeleteBandByA(r, an[succ + A_KEY]);
+        updA(n);
+        return balA(n);
+    }
+
+    private int aDeleteBandByA(int n, int aKey) {
+        if (n == 0) return 0;
+        int key = an[n + A_KEY];
+        if (aKey < key) an[n + A_LEFT] = aDeleteBandByA(an[n + A_LEFT], aKey);
+        else if (aKey > key) an[n + A_RIGHT] = aDeleteBandByA(an[n + A_RIGHT], aKey);
+        else return removeBand(n);
+        updA(n);
+        return balA(n);
+    }
+
+    // ----- Priority band finders (same rules as Deck.bandForP1..P4) -----
+    private int bandForP1(int n, int strangerHealth, int needHealth) {
+        if (n == 0 || an[n + A_SMAXH] < needHealth) return 0;
+        if (an[n + A_KEY] >= strangerHealth) {
+            int l = an[n + A_LEFT];
+            if (l != 0 && an[l + A_SMAXA] >= strangerHealth && an[l + A_SMAXH] >= needHealth) {
+                int ans = bandForP1(l, strangerHealth, needHealth);
+                if (ans != 0) return ans;
+            }
+            if (an[n + A_BMAX] >= needHealth) return n;
+        }
+        return bandForP1(an[n + A_RIGHT], strangerHealth, needHealth);
+    }
+
+    private int bandForP2(int n, int strangerHealth, int needHealth) {
+        if (n == 0 || an[n + A_SMAXH] < needHealth) return 0;
+        if (an[n + A_KEY] >= strangerHealth) return bandForP2(an[n + A_LEFT], strangerHealth, needHealth);
+        int r = an[n + A_RIGHT];
+        if (r != 0 && an[r + A_SMINA] < strangerHealth && an[r + A_SMAXH] >= needHealth) {
+            int ans = bandForP2(r, strangerHealth, needHealth);
+            if (ans != 0) return ans;
+        }
+        if (an[n + A_BMAX] >= needHealth) return n;
+        return bandForP2(an[n + A_LEFT], strangerHealth, needHealth);
+    }
+
+    private int bandForP3(int n, int strangerHealth, int strangerAttack) {
+        if (n == 0 || an[n + A_SMINH] > strangerAttack) return 0;
+        if (an[n + A_KEY] >= strangerHealth) {
+            int l = an[n + A_LEFT];
+            if (l != 0 && an[l + A_SMAXA] >= strangerHealth && an[l + A_SMINH] <= strangerAttack) {
+                int ans = bandForP3(l, strangerHealth, strangerAttack);
+                if (ans != 0) return ans;
+            }
+            if (an[n + A_BMIN] <= strangerAttack) return n;
+        }
+        return bandForP3(an[n + A_RIGHT], strangerHealth, strangerAttack);
+    }
+
+    private int bandForP4(int n) {
+        if (n == 0) return 0;
+        while (an[n + A_RIGHT] != 0) n = an[n + A_RIGHT];
+        return n;
+    }
+
+    Card findOptimalBattleCard(int strangerAttack, int strangerHealth) {
+        int band = bandForP1(root, strangerHealth, strangerAttack + 1);
+        if (band != 0) {
+            lastPickPriority = 1;
+            return cardAt(hLowerBound(an[band + A_ROOT], strangerAttack + 1));
+        }
+        band = bandForP2(root, strangerHealth, strangerAttack + 1);
+        if (band != 0) {
+            lastPickPriority = 2;
+            return cardAt(hLowerBound(an[band + A_ROOT], strangerAttack + 1));
+        }
+        band = bandForP3(root, strangerHealth, strangerAttack);
+        if (band != 0) {
+            int m = hMinNode(an[band + A_ROOT]);
+            if (m != 0 && hn[m + H_KEY] <= strangerAttack) {
+                lastPickPriority = 3;
+                return cardAt(m);
+            }
+        }
+        band = bandForP4(root);
+        if (band != 0) {
+            lastPickPriority = 4;
+            return cardAt(hMinNode(an[band + A_ROOT]));
+        }
+        lastPickPriority = 0;
+        return null;
+    }
+
+    // Steal: A_cur > attackLimit, H_cur > healthLimit; same search as P1 with strict limits
+    Card findBestStealCandidate(int attackLimit, int healthLimit) {
+        int band = bandForP1(root, attackLimit + 1, healthLimit + 1);
+        if (band == 0) return null;
+        return cardAt(hLowerBound(an[band + A_ROOT], healthLimit + 1));
+    }
+
+    // ----- Analytics queries (same walks as Deck's, same O(n) worst case on both axes) -----
+    // Whether [aLo, aHi] holds every band, so a count only has a health range
+    boolean coversAttack(int aLo, int aHi) {
+        return root != 0 && aLo <= an[root + A_SMINA] && aHi >= an[root + A_SMAXA];
+    }
+
+    int countRange(int aLo, int aHi, int hLo, int hHi) {
+        if (root == 0 || aLo > aHi || hLo > hHi) return 0;
+        if (hLo <= an[root + A_SMINH] && hHi >= an[root + A_SMAXH]) return countAttack(root, aLo, aHi);
+        return countBox(root, aLo, aHi, hLo, hHi);
+    }
+
+    // Cards in bands with aLo <= A <= aHi
+    private int countAttack(int n, int aLo, int aHi) {
+        while (n != 0) { // split point: first node inside the range
+            if (an[n + A_KEY] < aLo) n = an[n + A_RIGHT];
+            else if (an[n + A_KEY] > aHi) n = an[n + A_LEFT];
+            else break;
+        }
+        if (n == 0) return 0;
+        int count = bandSize(n);
+        for (int l = an[n + A_LEFT]; l != 0; ) { // right flank of the left subtree
+            if (an[l + A_KEY] >= aLo) { count += bandSize(l) + sizeA(an[l + A_RIGHT]); l = an[l + A_LEFT]; }
+            else l = an[l + A_RIGHT];
+        }
+        for (int r = an[n + A_RIGHT]; r != 0; ) {
+            if (an[r + A_KEY] <= aHi) { count += bandSize(r) + sizeA(an[r + A_LEFT]); r = an[r + A_RIGHT]; }
+            else r = an[r + A_LEFT];
+        }
+        return count;
+    }
+
+    private int countBox(int n, int aLo, int aHi, int hLo, int hHi) {
+        if (n == 0 || an[n + A_SMAXA] < aLo || an[n + A_SMINA] > aHi
+                || an[n + A_SMAXH] < hLo || an[n + A_SMINH] > hHi) return 0;
+        if (an[n + A_SMINA] >= aLo && an[n + A_SMAXA] <= aHi
+                && an[n + A_SMINH] >= hLo && an[n + A_SMAXH] <= hHi) return an[n + A_SIZE];
+        int count = countBox(an[n + A_LEFT], aLo, aHi, hLo, hHi) + countBox(an[n + A_RIGHT], aLo, aHi, hLo, hHi);
+        int a = an[n + A_KEY];
+        if (a >= aLo && a <= aHi) count += hCountBelow(an[n + A_ROOT], hHi, true) - hCountBelow(an[n + A_ROOT], hLo, false);
+        return count;
+    }
+
+    // Cards in a health tree with H < h (or <= h when inclusive)
+    private int hCountBelow(int n, int h, boolean inclusive) {
+        int count = 0;
+        while (n != 0) {
+            int v = hn[n + H_KEY];
+            if (v < h || (inclusive && v == h)) { count += sizeH(hn[n + H_LEFT]) + 1; n = hn[n + H_RIGHT]; }
+            else n = hn[n + H_LEFT];
+        }
+        return count;
+    }
+
+    // k-th from the top in (A, H, order), null if k is out of range
+    Card kthByAttack(int k) {
+        if (k < 1 || k > cardCount) return null;
+        int n = root;
+        while (n != 0) {
+            int rs = sizeA(an[n + A_RIGHT]);
+            if (k <= rs) { n = an[n + A_RIGHT]; continue; }
+            k -= rs;
+            int band = bandSize(n);
+            if (k <= band) return cardAt(hSelect(an[n + A_ROOT], band - k));
+            k -= band;
+            n = an[n + A_LEFT];
+        }
+        return null;
+    }
+
+    // i-th (0-based) smallest node of a health tree
+    private int hSelect(int n, int i) {
+        while (true) {
+            int ls = sizeH(hn[n + H_LEFT]);
+            if (i < ls) n = hn[n + H_LEFT];
+            else if (i == ls) return n;
+            else { i -= ls + 1; n = hn[n + H_RIGHT]; }
+        }
+    }
+
+    // Smallest A >= a, DeckIndex.NO_VALUE if there is none
+    long ceilingAttack(int a) {
+        long ans = DeckIndex.NO_VALUE;
+        for (int n = root; n != 0; ) {
+            if (an[n + A_KEY] >= a) { ans = an[n + A_KEY]; n = an[n + A_LEFT]; }
+            else n = an[n + A_RIGHT];
+        }
+        return ans;
+    }
+
+    private int sizeH(int n) { return n == 0 ? 0 : hn[n + H_SIZE]; }
+    private int sizeA(int n) { return n == 0 ? 0 : an[n + A_SIZE]; }
+    private int bandSize(int n) { return sizeH(an[n + A_ROOT]); }
+
+    // ----- Bulk export / load (see Deck.copyInOrder / loadSorted) -----
+    void copyInOrder(Card[] out) { copyA(root, out, 0); }
+
+    private int copyA(int n, Card[] out, int i) {
+        if (n == 0) return i;
+        i = copyA(an[n + A_LEFT], out, i);
+        i = copyH(an[n + A_ROOT], out, i);
+        return copyA(an[n + A_RIGHT], out, i);
+    }
+
+    private int copyH(int n, Card[] out, int i) {
+        if (n == 0) return i;
+        i = copyH(hn[n + H_LEFT], out, i);
+        out[i++] = cards[n >> H_SHIFT];
+        return copyH(hn[n + H_RIGHT], out, i);
+    }
+
+    // Drop the current contents and build balanced trees from a sorted run
+    void loadSorted(Card[] sorted, int n) {
+        hn = new int[(n + 1) * H_STRIDE];
+        cards = new Card[n + 1];
+        hTop = H_STRIDE;
+        hFree = 0;
+        int bands = 0;
+        for (int i = 0; i < n; i++) if (i == 0 || sorted[i].getACur() != sorted[i - 1].getACur()) bands++;
+        an = new int[(bands + 1) * A_STRIDE];
+        aTop = A_STRIDE;
+        aFree = 0;
+
+        int[] bandStart = new int[bands + 1];
+        for (int i = 0, b = 0; i < n; i++) if (i == 0 || sorted[i].getACur() != sorted[i - 1].getACur()) bandStart[b++] = i;
+        bandStart[bands] = n;
+
+        bandCount = 0;
+        root = buildA(sorted, bandStart, 0, bands - 1);
+        cardCount = n;
+    }
+
+    private int buildA(Card[] sorted, int[] bandStart, int lo, int hi) {
+        if (lo > hi) return 0;
+        int mid = (lo + hi) >>> 1;
+        Card first = sorted[bandStart[mid]];
+        int n = allocA(first.getACur(), first.getHCur(), first.getOrder(), first);
+        freeH(an[n + A_ROOT]); // the band's tree is built below instead
+        int t = buildH(sorted, bandStart[mid], bandStart[mid + 1] - 1);
+        an[n + A_ROOT] = t;
+        t = buildA(sorted, bandStart, lo, mid - 1);
+        an[n + A_LEFT] = t;
+        t = buildA(sorted, bandStart, mid + 1, hi);
+        an[n + A_RIGHT] = t;
+        updA(n);
+        return n;
+    }
+
+    private int buildH(Card[] sorted, int lo, int hi) {
+        if (lo > hi) return 0;
+        int mid = (lo + hi) >>> 1;
+        Card c = sorted[mid];
+        int n = allocH(c.getHCur(), c.getOrder(), c);
+        int t = buildH(sorted, lo, mid - 1);
+        hn[n + H_LEFT] = t;
+        t = buildH(sorted, mid + 1, hi);
+        hn[n + H_RIGHT] = t;
+        updH(n);
+        return n;
+    }
+
+    // ----- Full recount (CHECK_FULL) -----
+    int countAll() { return countA(root); }
+
+    private int countA(int n) {
+        if (n == 0) return 0;
+        return countA(an[n + A_LEFT]) + countH(an[n + A_ROOT]) + countA(an[n + A_RIGHT]);
+    }
+
+    private int countH(int n) {
+        if (n == 0) return 0;
+        return 1 + countH(hn[n + H_LEFT]) + countH(hn[n + H_RIGHT]);
+    }
+}
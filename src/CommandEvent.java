@@ -0,0 +1,24 @@
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event emitted for every command when -Dnightpass.jfr=true
+ * (record with -XX:StartFlightRecording). Duration is the handler time.
+ */
+@Name("nightpass.Command")
+@Label("Nightpass Command")
+@Category("Nightpass")
+@StackTrace(false)
+class CommandEvent extends Event {
+    @Label("Command")
+    String command;
+
+    @Label("Priority")
+    int priority;   // battle only: 1..4, 0 = no card played
+
+    @Label("Deck Size")
+    int deckSize;
+}
@@ -0,0 +1,160 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Append-only binary journal of the commands applied to a GameManager.
+ *
+ * Every record holds the command with its arguments and a fingerprint of
+ * the response it produced (byte length plus a 64-bit FNV-1a hash), so a
+ * journal can be replayed against another engine and compared command by
+ * command without keeping the text output around. Records are collected in
+ * a direct buffer and written through the channel in large batches.
+ *
+ * Layout (big-endian):
+ *   int magic "NPJL", int version, long firstCommand
+ *   records: byte command, [int nameLength, name bytes (draw_card only)],
+ *            argCount(command) x int, int outputLength, long outputHash
+ *
+ * firstCommand is the number of commands applied before the journal was
+ * opened (non-zero when a run resumed from a checkpoint), so a journal can
+ * be replayed on top of the GameSnapshot taken at that point. A resumed run
+ * writes a new segment, FILE.firstCommand (see segment()), and leaves the
+ * journal of the earlier run as it was.
+ */
+public class CommandJournal implements Closeable {
+    private static final int MAGIC = 0x4E504A4C; // "NPJL"
+    private static final int VERSION = 1;
+    private static final int BUFFER = 1 << 20;
+    private static final int MAX_RECORD = 1 + 4 + 4 * CommandReader.MAX_ARGS + 4 + 8; // without the name
+
+    private final FileChannel ch;
+    private final ByteBuffer buf;
+
+    // Journal file for a run starting after firstCommand: the file itself for a fresh run,
+    // else the sibling segment "file.firstCommand"
+    public static Path segment(Path file, long firstCommand) {
+        return firstCommand == 0 ? file : file.resolveSibling(file.getFileName() + "." + firstCommand);
+    }
+
+    public CommandJournal(Path file, long firstCommand) throws IOException {
+        ch = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        buf = ByteBuffer.allocateDirect(BUFFER);
+        buf.putInt(MAGIC).putInt(VERSION).putLong(firstCommand);
+    }
+
+    // Append the command the reader just parsed, with its response fingerprint
+    public void record(int command, CommandSource reader, int outputLength, long outputHash) throws IOException {
+        String name = command == CommandReader.DRAW_CARD ? reader.name() : null;
+        byte[] nameBytes = name == null ? null : name.getBytes(StandardCharsets.UTF_8);
+        int need = MAX_RECORD + (nameBytes == null ? 0 : nameBytes.length);
+        if (buf.remaining() < need) drain();
+        if (buf.remaining() < need) throw new IOException("Journal record too large: " + name);
+
+        buf.put((byte) command);
+        if (nameBytes != null) buf.putInt(nameBytes.length).put(nameBytes);
+        int argc = CommandReader.argCount(command);
+        for (int i = 0; i < argc; i++) buf.putInt(reader.arg(i));
+        buf.putInt(outputLength).putLong(outputHash);
+    }
+
+    // Push buffered records to the file (e.g. right before a checkpoint)
+    public void flush() throws IOException {
+        drain();
+    }
+
+    @Override
+    public void close() throws IOException {
+        drain();
+        ch.close();
+    }
+
+    private void drain() throws IOException {
+        buf.flip();
+        while (buf.hasRemaining()) ch.write(buf);
+        buf.clear();
+    }
+
+    /** Sequential reader over a journal file; call next() until it returns false. */
+    public static final class Reader implements Closeable {
+        private final FileChannel ch;
+        private final ByteBuffer buf;
+        private final long firstCommand;
+        private byte[] nameBytes = new byte[64];
+
+        // Current record
+        public int command;
+        public String name;
+        public final int[] args = new int[CommandReader.MAX_ARGS];
+        public int outputLength;
+        public long outputHash;
+
+        public Reader(Path file) throws IOException {
+            ch = FileChannel.open(file, StandardOpenOption.READ);
+            buf = ByteBuffer.allocateDirect(BUFFER);
+            buf.flip();
+            if (!fill(16) || buf.getInt() != MAGIC) {
+                ch.close();
+                throw new IOException("Not a Nightpass journal: " + file);
+            }
+            int version = buf.getInt();
+            if (version != VERSION) {
+                ch.close();
+                throw new IOException("Unsupported journal version " + version);
+            }
+            firstCommand = buf.getLong();
+        }
+
+        public long getFirstCommand() { return firstCommand; }
+
+        public boolean next() throws IOException {
+            if (!fill(1)) return false;
+            command = buf.get();
+            if (command < CommandReader.DRAW_CARD || command > CommandReader.HISTOGRAM_HEALTH)
+                throw new IOException("Corrupt journal record: command " + command);
+            name = null;
+            if (command == CommandReader.DRAW_CARD) {
+                require(4);
+                int len = buf.getInt();
+                if (len > nameBytes.length) nameBytes = new byte[Math.max(len, nameBytes.length * 2)];
+                require(len);
+                buf.get(nameBytes, 0, len);
+                name = new String(nameBytes, 0, len, StandardCharsets.UTF_8);
+            }
+            int argc = CommandReader.argCount(command);
+            require(4 * argc + 12);
+            for (int i = 0; i < argc; i++) args[i] = buf.getInt();
+            outputLength = buf.getInt();
+            outputHash = buf.getLong();
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            ch.close();
+        }
+
+        private void require(int n) throws IOException {
+            if (!fill(n)) throw new IOException("Truncated journal record");
+        }
+
+        // Make at least n bytes readable; false at a clean end of file
+        private boolean fill(int n) throws IOException {
+            if (buf.remaining() >= n) return true;
+            buf.compact();
+            while (buf.position() < n) {
+                if (ch.read(buf) < 0) {
+                    buf.flip();
+                    return false;
+                }
+            }
+            buf.flip();
+            return true;
+        }
+    }
+}
@@ -0,0 +1,140 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Parse stage of the pipelined mode (-Dnightpass.pipeline=true): a parser
+ * thread runs a CommandReader over the input and publishes compact command
+ * records (code, name id, arguments) into a bounded ring; the engine thread
+ * consumes them through the CommandSource methods, in input order.
+ *
+ * The ring is a preallocated single-producer/single-consumer queue: slots
+ * are parallel int arrays, and the two sides only share the head (next
+ * record to consume) and tail (next record to fill) counters. Each side
+ * keeps a cached copy of the other's counter and rereads it only when the
+ * ring looks full or empty, so in steady state a record costs a few array
+ * stores plus one ordered counter write. Names are interned by the parser
+ * into the game's NameTable (intern is thread-safe), so the engine only
+ * ever sees ids.
+ *
+ * An unknown keyword ends the stream: the parser publishes INVALID with its
+ * token and stops, as Main stops at the first invalid command.
+ */
+public class CommandPipeline implements CommandSource {
+    private static final int CAPACITY = 1 << 14; // records, power of two
+    private static final int MASK = CAPACITY - 1;
+    private static final int ARGS = CommandReader.MAX_ARGS;
+
+    // ring slots
+    private final int[] codes = new int[CAPACITY];
+    private final int[] nameIds = new int[CAPACITY];
+    private final int[] args = new int[CAPACITY * ARGS];
+
+    private final AtomicLong head = new AtomicLong(); // written by the engine
+    private final AtomicLong tail = new AtomicLong(); // written by the parser
+    private long cachedHead;                          // parser's view of head
+    private long cachedTail;                          // engine's view of tail
+
+    private final NameTable names;
+    private final Thread parser;
+    private volatile boolean stopped;
+    private IOException failure; // set before the final record is published
+    private String invalidToken;
+
+    // current record, copied out of the ring by next()
+    private int nameId;
+    private final int[] current = new int[ARGS];
+    private String token = "";
+
+    public CommandPipeline(InputStream in, NameTable names) {
+        this.names = names;
+        this.parser = new Thread(() -> parse(new CommandReader(in)), "nightpass-parser");
+        this.parser.setDaemon(true);
+        this.parser.start();
+    }
+
+    // ----- parser thread -----
+    private void parse(CommandReader reader) {
+        int command;
+        try {
+            do {
+                command = reader.next();
+                if (command == CommandReader.INVALID) invalidToken = reader.token();
+                if (!publish(command, reader)) return;
+            } while (command != CommandReader.EOF && command != CommandReader.INVALID);
+        } catch (IOException e) {
+            failure = e;
+            publish(CommandReader.EOF, null);
+        }
+    }
+
+    // Wait for a free slot and fill it; false if the engine side was closed
+    private boolean publish(int command, CommandReader reader) {
+        long t = tail.get();
+        for (int round = 0; t - cachedHead == CAPACITY; round++) {
+            if (stopped) return false;
+            cachedHead = head.get();
+            if (t - cachedHead == CAPACITY) idle(round);
+        }
+        int s = (int) t & MASK;
+        codes[s] = command;
+        if (reader != null && command > 0) {
+            nameIds[s] = command == CommandReader.DRAW_CARD ? reader.internName(names) : -1;
+            int argc = CommandReader.argCount(command);
+            for (int i = 0; i < argc; i++) args[s * ARGS + i] = reader.arg(i);
+        }
+        tail.lazySet(t + 1); // ordered after the slot writes
+        return true;
+    }
+
+    // ----- engine thread -----
+    public int next() throws IOException {
+        long h = head.get();
+        for (int round = 0; h == cachedTail; round++) {
+            cachedTail = tail.get();
+            if (h == cachedTail) idle(round);
+        }
+        int s = (int) h & MASK;
+        int command = codes[s];
+        if (command > 0) {
+            nameId = nameIds[s];
+            int argc = CommandReader.argCount(command);
+            for (int i = 0; i < ARGS; i++) current[i] = i < argc ? args[s * ARGS + i] : 0;
+        } else if (command == CommandReader.INVALID) {
+            token = invalidToken;
+        } else if (failure != null) {
+            throw failure;
+        }
+        if (command > 0) head.lazySet(h + 1); // EOF and INVALID stay, so later calls see them again
+        return command;
+    }
+
+    public String name() { return nameId < 0 ? "" : names.name(nameId); }
+
+    // The parser already interned the name into this pipeline's table
+    public int internName(NameTable table) {
+        if (table != names) throw new IllegalArgumentException("Name ids belong to another NameTable");
+        return nameId;
+    }
+
+    public int arg(int i) { return current[i]; }
+
+    public String token() { return token; }
+
+    // Stop the parser thread if it is still running (e.g. after an error)
+    @Override
+    public void close() {
+        stopped = true;
+    }
+
+    /**
+     * Waiting side of both pipeline rings: spin briefly, then yield (the
+     * other stage may need this core), then sleep in short steps.
+     */
+    static void idle(int round) {
+        if (round < 64) Thread.onSpinWait();
+        else if (round < 128) Thread.yield();
+        else LockSupport.parkNanos(50_000);
+    }
+}
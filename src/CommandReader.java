@@ -0,0 +1,240 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Streaming tokenizer for Nightpass command files.
+ *
+ * Reads the input through one reusable byte buffer and decodes each command
+ * in place: the keyword is matched against pre-encoded byte patterns and the
+ * integer arguments are parsed digit by digit, so no per-line objects are
+ * created. The card name of a draw_card command stays in the scratch buffer
+ * until internName() looks it up in the game's NameTable, so only a name
+ * seen for the first time is copied.
+ *
+ * Usage: call next() until it returns EOF, then read the arguments of the
+ * returned command through internName()/name()/arg(i).
+ */
+public class CommandReader implements CommandSource {
+    // Command codes returned by next()
+    public static final int EOF = -1;
+    public static final int INVALID = 0;
+    public static final int DRAW_CARD = 1;
+    public static final int BATTLE = 2;
+    public static final int STEAL_CARD = 3;
+    public static final int DECK_COUNT = 4;
+    public static final int FIND_WINNING = 5;
+    public static final int DISCARD_PILE_COUNT = 6;
+    // Analytics queries
+    public static final int COUNT_RANGE = 7;
+    public static final int KTH_STRONGEST_ATTACK = 8;
+    public static final int KTH_STRONGEST_HEALTH = 9;
+    public static final int HISTOGRAM_ATTACK = 10;
+    public static final int HISTOGRAM_HEALTH = 11;
+
+    private static final byte[][] KEYWORDS = {
+            null,
+            ascii("draw_card"),
+            ascii("battle"),
+            ascii("steal_card"),
+            ascii("deck_count"),
+            ascii("find_winning"),
+            ascii("discard_pile_count"),
+            ascii("count_range"),
+            ascii("kth_strongest_attack"),
+            ascii("kth_strongest_health"),
+            ascii("histogram_attack"),
+            ascii("histogram_health"),
+    };
+    // How many integer arguments each command takes (after the name of draw_card), and how
+    // many of them must be present; only battle's heal pool may be left out (it is then 0)
+    private static final int[] ARG_COUNT = { 0, 2, 3, 2, 0, 0, 0, 4, 1, 1, 1, 1 };
+    private static final int[] REQUIRED_ARGS = { 0, 2, 2, 2, 0, 0, 0, 4, 1, 1, 1, 1 };
+    public static final int MAX_ARGS = 4;
+
+    private final InputStream in;
+    private final byte[] buf;
+    private int pos, limit;
+
+    private byte[] word = new byte[64]; // scratch for the current keyword / name
+    private int wordLen;
+    private byte[] arg = new byte[16]; // scratch for the current integer token
+    private int argLen;
+    private final int[] args = new int[MAX_ARGS];
+    private int nameLen;  // the draw_card name is word[0..nameLen)
+
+    public CommandReader(InputStream in) {
+        this(in, 1 << 16);
+    }
+
+    public CommandReader(InputStream in, int bufferSize) {
+        this.in = in;
+        this.buf = new byte[bufferSize];
+        this.pos = 0;
+        this.limit = 0;
+    }
+
+    /**
+     * Advance to the next command and return its code (EOF at end of input,
+     * INVALID for an unknown keyword). Blank lines are skipped. An argument
+     * that is missing, not a plain decimal or outside the int range also
+     * makes the command INVALID, as Scanner.nextInt used to throw on it;
+     * token() then names the keyword and the offending argument. Only the
+     * optional heal pool of battle defaults to 0.
+     */
+    public int next() throws IOException {
+        int b = skipBlank();
+        if (b < 0) return EOF;
+
+        readWord(b);
+        int cmd = matchKeyword();
+        nameLen = 0;
+        for (int i = 0; i < MAX_ARGS; i++) args[i] = 0;
+        if (cmd == INVALID) {
+            skipLine();
+            return INVALID;
+        }
+
+        if (cmd == DRAW_CARD) {
+            b = skipSpaces();
+            if (b < 0 || b == '\n') return invalid(cmd, null, b);
+            readWord(b);
+            nameLen = wordLen;
+        }
+        for (int i = 0; i < ARG_COUNT[cmd]; i++) {
+            b = skipSpaces();
+            if (b < 0 || b == '\n') return i < REQUIRED_ARGS[cmd] ? invalid(cmd, null, b) : cmd;
+            if (!readInt(b, i)) return invalid(cmd, new String(arg, 0, argLen, StandardCharsets.UTF_8), 0);
+        }
+        skipLine();
+        return cmd;
+    }
+
+    // Report the current command as INVALID with "keyword [bad argument]" as its token,
+    // skipping the rest of the line unless b shows it has already ended
+    private int invalid(int cmd, String bad, int b) throws IOException {
+        if (b >= 0 && b != '\n') skipLine();
+        String keyword = new String(KEYWORDS[cmd], StandardCharsets.US_ASCII);
+        byte[] text = (bad == null ? keyword : keyword + " " + bad).getBytes(StandardCharsets.UTF_8);
+        if (text.length > word.length) word = new byte[text.length];
+        System.arraycopy(text, 0, word, 0, text.length);
+        wordLen = text.length;
+        nameLen = 0;
+        return INVALID;
+    }
+
+    // Card name of the current draw_card command
+    public String name() { return new String(word, 0, nameLen, StandardCharsets.UTF_8); }
+
+    // Id of that name in names, without building a String
+    public int internName(NameTable names) { return names.intern(word, 0, nameLen); }
+
+    // i-th integer argument of the current command (0 for battle's heal pool if absent)
+    public int arg(int i) { return args[i]; }
+
+    // True while already-read input is waiting in the buffer, i.e. the next
+    // command can be parsed without blocking on the stream
+    public boolean hasBufferedInput() { return pos < limit; }
+
+    // Keyword of the current command (with the bad argument, if that made it INVALID);
+    // only meant for error reporting
+    public String token() { return new String(word, 0, wordLen, StandardCharsets.UTF_8); }
+
+    // Number of integer arguments a command code takes
+    public static int argCount(int command) { return ARG_COUNT[command]; }
+
+    // ----- byte level helpers -----
+    private int read() throws IOException {
+        if (pos == limit) {
+            limit = in.read(buf, 0, buf.length);
+            pos = 0;
+            if (limit <= 0) { limit = 0; return -1; }
+        }
+        return buf[pos++] & 0xFF;
+    }
+
+    private static boolean isSpace(int b) {
+        return b == ' ' || b == '\t' || b == '\r' || b == '\f';
+    }
+
+    // Skip whitespace including newlines; return first non-blank byte or -1
+    private int skipBlank() throws IOException {
+        int b = read();
+        while (b >= 0 && (isSpace(b) || b == '\n')) b = read();
+        return b;
+    }
+
+    // Skip whitespace on the current line; return first other byte, '\n' or -1
+    private int skipSpaces() throws IOException {
+        int b = read();
+        while (b >= 0 && isSpace(b)) b = read();
+        return b;
+    }
+
+    private void skipLine() throws IOException {
+        int b = read();
+        while (b >= 0 && b != '\n') b = read();
+    }
+
+    // Read a token starting with byte b; the terminating byte is pushed back
+    private void readWord(int b) throws IOException {
+        wordLen = 0;
+        while (b >= 0 && b != '\n' && !isSpace(b)) {
+            if (wordLen == word.length) {
+                byte[] grown = new byte[word.length * 2];
+                System.arraycopy(word, 0, grown, 0, wordLen);
+                word = grown;
+            }
+            word[wordLen++] = (byte) b;
+            b = read();
+        }
+        if (b >= 0) pos--;
+    }
+
+    // Read the token starting with byte b and store it in args[i] if it is an int: an optional
+    // sign, then only digits, at least one, within the int range
+    private boolean readInt(int b, int i) throws IOException {
+        argLen = 0;
+        while (b >= 0 && b != '\n' && !isSpace(b)) {
+            if (argLen == arg.length) {
+                byte[] grown = new byte[arg.length * 2];
+                System.arraycopy(arg, 0, grown, 0, argLen);
+                arg = grown;
+            }
+            arg[argLen++] = (byte) b;
+            b = read();
+        }
+        if (b >= 0) pos--;
+
+        int k = 0;
+        boolean neg = arg[0] == '-';
+        if (neg || arg[0] == '+') k = 1;
+        if (k == argLen) return false;
+        long v = 0;
+        for (; k < argLen; k++) {
+            int d = arg[k] - '0';
+            if (d < 0 || d > 9) return false;
+            v = v * 10 + d;
+            if (v > Integer.MAX_VALUE + 1L) return false;
+        }
+        if (neg) v = -v;
+        if (v > Integer.MAX_VALUE) return false;
+        args[i] = (int) v;
+        return true;
+    }
+
+    private int matchKeyword() {
+        for (int cmd = 1; cmd < KEYWORDS.length; cmd++) {
+            byte[] k = KEYWORDS[cmd];
+            if (k.length != wordLen) continue;
+            int i = 0;
+            while (i < wordLen && word[i] == k[i]) i++;
+            if (i == wordLen) return cmd;
+        }
+        return INVALID;
+    }
+
+    private static byte[] ascii(String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+}
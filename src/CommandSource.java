@@ -0,0 +1,28 @@
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * A stream of parsed commands: CommandReader parses them on the calling
+ * thread, CommandPipeline hands over the ones a parser thread has already
+ * read. Codes and argument conventions are those of CommandReader.
+ */
+public interface CommandSource extends Closeable {
+    // Advance to the next command and return its code (CommandReader.EOF at the end)
+    int next() throws IOException;
+
+    // Card name of the current draw_card command
+    String name();
+
+    // Id of that name in names
+    int internName(NameTable names);
+
+    // i-th integer argument of the current command (0 for battle's heal pool if absent)
+    int arg(int i);
+
+    // Keyword of the current command; only meant for error reporting
+    String token();
+
+    // Release background resources; the input stream itself stays open
+    @Override
+    default void close() { }
+}
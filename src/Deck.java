@@ -1,4 +1,4 @@
-public class Deck {
+public class Deck implements DeckIndex {
     // ----- Inner AVL node: ordered by Health (then by order for ties) -----
     private static final class HNode {
         Card card;
@@ -17,9 +17,14 @@ public class Deck {
     }
 
     // ----- Outer AVL node: ordered by Attack (attack "band") -----
+    // A band keeps its cards in one of two forms (see bandInsert): while small, in
+    // keys/cards[0..bandLen) sorted by (H_cur, order); past PROMOTE cards, in rootH.
     private static final class ANode {
         int A;         // attack key of this band
-        HNode rootH;   // root of inner health tree for this band
+        HNode rootH;   // root of inner health tree for this band, null while the band is an array
+        long[] keys;   // packed (H_cur, order) of the array form, see key()
+        Card[] cards;
+        int bandLen;
 
         // summaries
         int bandMinH, bandMaxH;       // min/max H inside this band
@@ -32,7 +37,9 @@ public class Deck {
 
         ANode(Card c) {
             this.A = c.getACur();
-            this.rootH = new HNode(c);
+            this.keys = new long[] { key(c) };
+            this.cards = new Card[] { c };
+            this.bandLen = 1;
             this.height = 1;
             this.bandMinH = c.getHCur();
             this.bandMaxH = c.getHCur();
@@ -43,30 +50,131 @@ public class Deck {
         }
     }
 
+    // Integrity check levels used by verifyCount (off by default)
+    public static final int CHECK_OFF  = 0; // no checking, deck_count stays O(1)
+    public static final int CHECK_SIZE = 1; // O(1): cardCount vs. root summary size
+    public static final int CHECK_FULL = 2; // O(n): walk every node and recount
+
     private ANode root;
     private int cardCount;
     private int lastPickPriority;
+    private int checkLevel;
+
+    // Band form thresholds: an array band becomes a tree when a card would make it
+    // PROMOTE+1 long, a tree band goes back to an array once it is down to DEMOTE cards
+    private static final int PROMOTE = 16;
+    private static final int DEMOTE = 8;
+
+    // Reusable descent paths for the iterative insert/delete (AVL height stays far below 64)
+    private static final int MAX_DEPTH = 64;
+    private final ANode[] aPath = new ANode[MAX_DEPTH];
+    private final HNode[] hPath = new HNode[MAX_DEPTH];
+    private boolean removed; // result flag of the last hDelete
+
+    // Cheap structural counters, reported by Metrics
+    private int bandCount;
+    private long aRotations, hRotations;
+
+    private final CardPool pool; // non-null in card-pool mode: all operations go there
+
+    // Health-ordered rank index for the analytics queries; built on first use, then kept in step
+    private HealthRankIndex healthRank;
 
     public Deck() {
+        this(false);
+    }
+
+    // pooled = keep cards and nodes in primitive arrays (see CardPool) instead of node objects
+    public Deck(boolean pooled) {
         root = null;
         cardCount = 0;
         lastPickPriority = 0;
+        checkLevel = CHECK_OFF;
+        pool = pooled ? new CardPool() : null;
     }
 
-    public int getCardCount() { return cardCount; }
-    public int getLastPickPriority() { return lastPickPriority; }
+    public void setCheckLevel(int level) { checkLevel = level; }
+
+    // Parse "off" / "size" / "full" (e.g. from -Dnightpass.check)
+    public static int parseCheckLevel(String s){
+        if (s == null || s.equals("off")) return CHECK_OFF;
+        if (s.equals("size")) return CHECK_SIZE;
+        if (s.equals("full")) return CHECK_FULL;
+        throw new IllegalArgumentException("Unknown check level: " + s);
+    }
+
+    public int getCardCount() { return pool != null ? pool.getCardCount() : cardCount; }
+    public int getLastPickPriority() { return pool != null ? pool.getLastPickPriority() : lastPickPriority; }
+
+    // ----- Structure statistics (for Metrics) -----
+    public int getBandCount() { return pool != null ? pool.getBandCount() : bandCount; }
+    public long getAttackRotations() { return pool != null ? pool.getAttackRotations() : aRotations; }
+    public long getHealthRotations() { return pool != null ? pool.getHealthRotations() : hRotations; }
+    public int getAttackHeight() { return pool != null ? pool.getAttackHeight() : hA(root); }
+
+    // Tallest health tree of any band (array bands count as 0); walks all bands, so only for reporting
+    public int getMaxBandHeight() { return pool != null ? pool.getMaxBandHeight() : maxBandHeight(root); }
+
+    private static int maxBandHeight(ANode n){
+        if (n==null) return 0;
+        return max3(maxBandHeight(n.left), hH(n.rootH), maxBandHeight(n.right));
+    }
 
     // Insert a card by its current attack band; updates counts/summaries
     public void insert(Card c) {
-        root = aInsert(root, c);
-        cardCount++;
+        if (pool != null) pool.insert(c);
+        else { aInsert(c); cardCount++; }
+        if (healthRank != null) healthRank.insert(c);
     }
 
     // Delete a specific card (by A/H/order identity)
     public void delete(Card c) {
-        boolean[] removed = new boolean[1]; // out param
-        root = aDelete(root, c, removed);
-        if (removed[0]) cardCount--;
+        if (pool != null){
+            if (pool.delete(c) && healthRank != null) healthRank.delete(c);
+            return;
+        }
+        if (aDelete(c)){
+            cardCount--;
+            if (healthRank != null) healthRank.delete(c);
+        }
+    }
+
+    // Move a card to new (A_cur, H_cur, order) and update the card itself.
+    // If the attack band stays the same, the band node is kept and the card is
+    // only re-seated inside that band's health tree; otherwise delete + insert.
+    public void reposition(Card c, int newA, int newH, int newOrder) {
+        if (pool != null){
+            if (healthRank != null) healthRank.delete(c);
+            pool.reposition(c, newA, newH, newOrder);
+            if (healthRank != null) healthRank.insert(c);
+            return;
+        }
+        if (newA != c.getACur()){
+            delete(c);
+            c.setHCur(newH); c.setACur(newA); c.setOrder(newOrder);
+            insert(c);
+            return;
+        }
+        int depth = 0;
+        ANode n = root;
+        while (n != null && n.A != newA){
+            aPath[depth++] = n;
+            n = (newA < n.A) ? n.left : n.right;
+        }
+        if (n == null){ // not in the deck: behave like insert
+            c.setHCur(newH); c.setOrder(newOrder);
+            insert(c);
+            return;
+        }
+        bandDelete(n, c);
+        if (!removed) cardCount++;
+        else if (healthRank != null) healthRank.delete(c);
+        c.setHCur(newH); c.setOrder(newOrder);
+        bandInsert(n, c);
+        if (healthRank != null) healthRank.insert(c);
+        // band sizes are unchanged, only the health summaries along the path move
+        aPath[depth++] = n;
+        for (int i = depth-1; i >= 0; i--) updA(aPath[i]);
     }
 
     // -------- HNode (Health AVL) helpers --------
@@ -104,27 +212,57 @@ public class Deck {
     }
 
     private static int bfH(HNode n){ return n==null?0:hH(n.left)-hH(n.right); }
-    private static HNode balH(HNode n){
+    private HNode balH(HNode n){
         if (n==null) return null;
         int bf = bfH(n);
         if (bf > 1){
-            if (bfH(n.left) < 0) n.left = rotHLeft(n.left);
+            if (bfH(n.left) < 0){ n.left = rotHLeft(n.left); hRotations++; }
+            hRotations++;
             return rotHRight(n);
         }
         if (bf < -1){
-            if (bfH(n.right) > 0) n.right = rotHRight(n.right);
+            if (bfH(n.right) > 0){ n.right = rotHRight(n.right); hRotations++; }
+            hRotations++;
             return rotHLeft(n);
         }
         return n;
     }
 
-    // Insert card into health-ordered AVL
-    private static HNode hInsert(HNode n, Card c){
-        if (n==null) return new HNode(c);
-        if (cmpH(c, n.card) < 0) n.left = hInsert(n.left, c);
-        else                     n.right = hInsert(n.right, c);
-        updH(n);
-        return balH(n);
+    // Point the link that held old (parent's child, or the root when parent==null) at repl
+    private static HNode relinkH(HNode root, HNode parent, HNode old, HNode repl){
+        if (parent == null) return repl;
+        if (parent.left == old) parent.left = repl; else parent.right = repl;
+        return root;
+    }
+
+    // Re-summarize and rebalance hPath[0..depth) bottom-up; returns the new root
+    private HNode hFixPath(HNode root, int depth){
+        for (int i = depth-1; i >= 0; i--){
+            HNode n = hPath[i];
+            updH(n);
+            HNode b = balH(n);
+            if (b != n) root = relinkH(root, i==0 ? null : hPath[i-1], n, b);
+        }
+        return root;
+    }
+
+    // Insert card into health-ordered AVL (iterative, path kept in hPath)
+    private HNode hInsert(HNode root, Card c){
+        HNode leaf = new HNode(c);
+        if (root==null) return leaf;
+        int depth = 0;
+        HNode n = root;
+        while (true){
+            hPath[depth++] = n;
+            if (cmpH(c, n.card) < 0){
+                if (n.left == null){ n.left = leaf; break; }
+                n = n.left;
+            } else {
+                if (n.right == null){ n.right = leaf; break; }
+                n = n.right;
+            }
+        }
+        return hFixPath(root, depth);
     }
 
     private static HNode hMinNode(HNode n){
@@ -132,22 +270,32 @@ public class Deck {
         return n;
     }
 
-    // Delete card from health-ordered AVL
-    private static HNode hDelete(HNode n, Card c, boolean[] removed){
-        if (n==null) return null;
-        int cmp = cmpH(c, n.card);
-        if (cmp < 0) n.left = hDelete(n.left, c, removed);
-        else if (cmp > 0) n.right = hDelete(n.right, c, removed);
-        else {
-            removed[0] = true;
-            if (n.left==null) return n.right;
-            if (n.right==null) return n.left;
-            HNode succ = hMinNode(n.right);
-            n.card = succ.card;
-            n.right = hDelete(n.right, succ.card, new boolean[1]);
+    // Delete card from health-ordered AVL (iterative); sets removed
+    private HNode hDelete(HNode root, Card c){
+        removed = false;
+        int depth = 0;
+        Card target = c;
+        HNode n = root;
+        while (n != null){
+            int cmp = cmpH(target, n.card);
+            if (cmp < 0){ hPath[depth++] = n; n = n.left; }
+            else if (cmp > 0){ hPath[depth++] = n; n = n.right; }
+            else if (n.left != null && n.right != null){
+                // two children: take over the successor's card, then remove the successor from the right
+                removed = true;
+                HNode succ = hMinNode(n.right);
+                n.card = succ.card;
+                target = succ.card;
+                hPath[depth++] = n;
+                n = n.right;
+            } else {
+                removed = true;
+                HNode child = (n.left != null) ? n.left : n.right;
+                root = relinkH(root, depth==0 ? null : hPath[depth-1], n, child);
+                return hFixPath(root, depth);
+            }
         }
-        updH(n);
-        return balH(n);
+        return root; // not found: nothing changed
     }
 
     // First card with H >= keyH (within a band)
@@ -171,6 +319,103 @@ public class Deck {
         return (m==null?null:m.card);
     }
 
+    // -------- Band storage: sorted arrays for small bands, the health AVL for large ones --------
+    // (H_cur, order) as one long, so array keys compare like cmpH (orders are positive)
+    private static long key(int h, int order){ return ((long) h << 32) | (order & 0xFFFFFFFFL); }
+    private static long key(Card c){ return key(c.getHCur(), c.getOrder()); }
+
+    private static int bandSize(ANode n){ return n.rootH != null ? n.rootH.size : n.bandLen; }
+
+    // First index i in keys[0..len) with keys[i] >= k
+    private static int search(long[] keys, int len, long k){
+        int lo = 0, hi = len;
+        while (lo < hi){
+            int mid = (lo+hi) >>> 1;
+            if (keys[mid] < k) lo = mid+1; else hi = mid;
+        }
+        return lo;
+    }
+
+    // Insert into a band; an array band that is full at PROMOTE cards becomes a tree first
+    private void bandInsert(ANode n, Card c){
+        if (n.rootH == null && n.bandLen == PROMOTE) promote(n);
+        if (n.rootH != null){ n.rootH = hInsert(n.rootH, c); return; }
+        long k = key(c);
+        int len = n.bandLen, i = search(n.keys, len, k);
+        if (len == n.keys.length){ // arrays grow 1, 2, 4, ... up to PROMOTE
+            int cap = Math.min(PROMOTE, 2*len);
+            long[] keys = new long[cap];
+            Card[] cards = new Card[cap];
+            System.arraycopy(n.keys, 0, keys, 0, len);
+            System.arraycopy(n.cards, 0, cards, 0, len);
+            n.keys = keys; n.cards = cards;
+        }
+        System.arraycopy(n.keys, i, n.keys, i+1, len-i);
+        System.arraycopy(n.cards, i, n.cards, i+1, len-i);
+        n.keys[i] = k;
+        n.cards[i] = c;
+        n.bandLen = len+1;
+    }
+
+    // Delete from a band (sets removed); a tree band down to DEMOTE cards becomes an array
+    private void bandDelete(ANode n, Card c){
+        if (n.rootH != null){
+            n.rootH = hDelete(n.rootH, c);
+            if (removed && n.rootH != null && n.rootH.size <= DEMOTE) demote(n);
+            return;
+        }
+        long k = key(c);
+        int len = n.bandLen, i = search(n.keys, len, k);
+        removed = i < len && n.keys[i] == k;
+        if (!removed) return;
+        System.arraycopy(n.keys, i+1, n.keys, i, len-i-1);
+        System.arraycopy(n.cards, i+1, n.cards, i, len-i-1);
+        n.cards[len-1] = null;
+        n.bandLen = len-1;
+    }
+
+    private void promote(ANode n){
+        n.rootH = buildH(n.cards, 0, n.bandLen-1);
+        n.keys = null; n.cards = null; n.bandLen = 0;
+    }
+
+    private void demote(ANode n){
+        int len = n.rootH.size;
+        n.cards = new Card[PROMOTE];
+        n.keys = new long[PROMOTE];
+        copyH(n.rootH, n.cards, 0);
+        for (int i = 0; i < len; i++) n.keys[i] = key(n.cards[i]);
+        n.bandLen = len;
+        n.rootH = null;
+    }
+
+    // First card of a band with H >= keyH
+    private static Card bandLowerBound(ANode n, int keyH){
+        if (n.rootH != null) return hLowerBound(n.rootH, keyH);
+        int i = search(n.keys, n.bandLen, key(keyH, 0));
+        return i < n.bandLen ? n.cards[i] : null;
+    }
+
+    // Minimum (by H then order) card of a band
+    private static Card bandMinCard(ANode n){
+        if (n.rootH != null) return hMinCard(n.rootH);
+        return n.bandLen > 0 ? n.cards[0] : null;
+    }
+
+    // Cards of a band with H < h (or <= h when inclusive)
+    private static int bandCountBelow(ANode n, int h, boolean inclusive){
+        if (n.rootH != null) return hCountBelow(n.rootH, h, inclusive);
+        if (!inclusive) return search(n.keys, n.bandLen, key(h, 0));
+        long last = key(h, -1); // largest key with this health; h+1 would overflow at MAX_VALUE
+        int i = search(n.keys, n.bandLen, last);
+        return i < n.bandLen && n.keys[i] == last ? i+1 : i;
+    }
+
+    // i-th (0-based) smallest card of a band
+    private static Card bandSelect(ANode n, int i){
+        return n.rootH != null ? hSelect(n.rootH, i) : n.cards[i];
+    }
+
     // -------- ANode (Attack AVL) helpers --------
     private static int hA(ANode n){ return n==null?0:n.height; }
     private static int szA(ANode n){ return n==null?0:n.size; }
@@ -179,8 +424,9 @@ public class Deck {
     private static int max3(int a, int b, int c){ return Math.max(a, Math.max(b,c)); }
 
     private static void pullBandSummary(ANode n){
-        if (n.rootH == null){ n.bandMinH = Integer.MAX_VALUE; n.bandMaxH = Integer.MIN_VALUE; }
-        else { n.bandMinH = n.rootH.minH; n.bandMaxH = n.rootH.maxH; }
+        if (n.rootH != null){ n.bandMinH = n.rootH.minH; n.bandMaxH = n.rootH.maxH; }
+        else if (n.bandLen > 0){ n.bandMinH = (int) (n.keys[0] >> 32); n.bandMaxH = (int) (n.keys[n.bandLen-1] >> 32); }
+        else { n.bandMinH = Integer.MAX_VALUE; n.bandMaxH = Integer.MIN_VALUE; }
     }
 
     // Recompute height, subtree summaries and size
@@ -203,7 +449,7 @@ public class Deck {
         n.subtreeMinA = Math.min(lMinA, rMinA);
         n.subtreeMaxA = Math.max(lMaxA, rMaxA);
 
-        n.size = (n.rootH==null?0:n.rootH.size)
+        n.size = bandSize(n)
                 + ((n.left==null)?0:n.left.size)
                 + ((n.right==null)?0:n.right.size);
     }
@@ -222,75 +468,103 @@ public class Deck {
         updA(x); updA(y);
         return y;
     }
-    private static ANode balA(ANode n){
+    private ANode balA(ANode n){
         if (n==null) return null;
         int bf = bfA(n);
         if (bf > 1){
-            if (bfA(n.left) < 0) n.left = rotALeft(n.left);
+            if (bfA(n.left) < 0){ n.left = rotALeft(n.left); aRotations++; }
+            aRotations++;
             return rotARight(n);
         }
         if (bf < -1){
-            if (bfA(n.right) > 0) n.right = rotARight(n.right);
+            if (bfA(n.right) > 0){ n.right = rotARight(n.right); aRotations++; }
+            aRotations++;
             return rotALeft(n);
         }
         return n;
     }
 
-    // Insert card into proper attack band; create band or insert into its H tree
-    private static ANode aInsert(ANode n, Card c){
-        if (n==null) return new ANode(c);
-        if (c.getACur() < n.A) n.left  = aInsert(n.left,  c);
-        else if (c.getACur() > n.A) n.right = aInsert(n.right, c);
-        else {
-            n.rootH = hInsert(n.rootH, c);
-        }
-        updA(n);
-        return balA(n);
+    private void relinkA(ANode parent, ANode old, ANode repl){
+        if (parent == null) root = repl;
+        else if (parent.left == old) parent.left = repl;
+        else parent.right = repl;
     }
 
-    private static ANode minANode(ANode n){
-        while(n!=null && n.left!=null) n = n.left;
-        return n;
+    // Re-summarize and rebalance aPath[0..depth) bottom-up
+    private void aFixPath(int depth){
+        for (int i = depth-1; i >= 0; i--){
+            ANode n = aPath[i];
+            updA(n);
+            ANode b = balA(n);
+            if (b != n) relinkA(i==0 ? null : aPath[i-1], n, b);
+        }
     }
 
-    // Delete a specific card; if band becomes empty, remove the band node
-    private static ANode aDelete(ANode n, Card c, boolean[] removed){
-        if (n==null) return null;
-        if (c.getACur() < n.A) n.left  = aDelete(n.left, c, removed);
-        else if (c.getACur() > n.A) n.right = aDelete(n.right, c, removed);
-        else {
-            n.rootH = hDelete(n.rootH, c, removed);
-            if (n.rootH == null){
-                // remove this band node
-                if (n.left == null) return n.right;
-                if (n.right== null) return n.left;
-                // two children: replace by successor band
-                ANode succ = minANode(n.right);
-                n.A = succ.A;
-                n.rootH = succ.rootH;  // move over the entire band tree
-                // delete that band node (by A only)
-                n.right = aDeleteBandByA(n.right, succ.A);
+    // Insert card into proper attack band; create band or insert into its H tree
+    private void aInsert(Card c){
+        int a = c.getACur();
+        int depth = 0;
+        ANode n = root;
+        while (n != null){
+            aPath[depth++] = n;
+            if (a < n.A){
+                if (n.left == null){ n.left = new ANode(c); bandCount++; break; }
+                n = n.left;
+            } else if (a > n.A){
+                if (n.right == null){ n.right = new ANode(c); bandCount++; break; }
+                n = n.right;
+            } else {
+                bandInsert(n, c);
+                break;
             }
         }
-        updA(n);
-        return balA(n);
-    }
+        if (depth == 0){ root = new ANode(c); bandCount++; }
+        else aFixPath(depth);
+    }
+
+    // Delete a specific card; if band becomes empty, remove the band node.
+    // Returns whether the card was found.
+    private boolean aDelete(Card c){
+        int a = c.getACur();
+        int depth = 0;
+        ANode n = root;
+        while (n != null && n.A != a){
+            aPath[depth++] = n;
+            n = (a < n.A) ? n.left : n.right;
+        }
+        if (n == null) return false;
+
+        bandDelete(n, c);
+        if (!removed) return false;
+        if (bandSize(n) > 0){
+            aPath[depth++] = n;
+            aFixPath(depth);
+            return true;
+        }
 
-    // Delete a band node by A key (used when we promoted successor)
-    private static ANode aDeleteBandByA(ANode n, int aKey){
-        if (n==null) return null;
-        if (aKey < n.A) n.left = aDeleteBandByA(n.left, aKey);
-        else if (aKey > n.A) n.right = aDeleteBandByA(n.right, aKey);
-        else {
-            if (n.left == null) return n.right;
-            if (n.right== null) return n.left;
-            ANode succ = minANode(n.right);
-            n.A = succ.A;
-            n.rootH = succ.rootH;
-            n.right = aDeleteBandByA(n.right, succ.A);
+        // band became empty: remove this band node
+        bandCount--;
+        ANode parent = (depth==0) ? null : aPath[depth-1];
+        if (n.left == null || n.right == null){
+            relinkA(parent, n, (n.left != null) ? n.left : n.right);
+            aFixPath(depth);
+            return true;
         }
-        updA(n);
-        return balA(n);
+        // two children: replace by successor band, moving its whole health tree
+        aPath[depth++] = n;
+        ANode succParent = n;
+        ANode succ = n.right;
+        while (succ.left != null){
+            aPath[depth++] = succ;
+            succParent = succ;
+            succ = succ.left;
+        }
+        n.A = succ.A;
+        n.rootH = succ.rootH;
+        n.keys = succ.keys; n.cards = succ.cards; n.bandLen = succ.bandLen;
+        relinkA(succParent, succ, succ.right);
+        aFixPath(depth);
+        return true;
     }
 
     // ----- Priority band finders (P1..P4) -----
@@ -359,19 +633,19 @@ public class Deck {
     private Card p1(int strangerAttack, int strangerHealth){
         ANode band = bandForP1(root, strangerHealth, strangerAttack+1);
         if (band == null) return null;
-        return hLowerBound(band.rootH, strangerAttack+1);
+        return bandLowerBound(band, strangerAttack+1);
     }
 
     private Card p2(int strangerAttack, int strangerHealth){
         ANode band = bandForP2(root, strangerHealth, strangerAttack+1);
         if (band == null) return null;
-        return hLowerBound(band.rootH, strangerAttack+1);
+        return bandLowerBound(band, strangerAttack+1);
     }
 
     private Card p3(int strangerAttack, int strangerHealth){
         ANode band = bandForP3(root, strangerHealth, strangerAttack);
         if (band == null) return null;
-        Card minInBand = hMinCard(band.rootH);
+        Card minInBand = bandMinCard(band);
         if (minInBand != null && minInBand.getHCur() <= strangerAttack) return minInBand;
         return null;
     }
@@ -379,11 +653,12 @@ public class Deck {
     private Card p4(){
         ANode band = bandForP4(root);
         if (band == null) return null;
-        return hMinCard(band.rootH);
+        return bandMinCard(band);
     }
 
     // Public API: find the optimal battle card in priority order (1..4)
     public Card findOptimalBattleCard(int strangerAttack, int strangerHealth){
+        if (pool != null) return pool.findOptimalBattleCard(strangerAttack, strangerHealth);
         Card r = p1(strangerAttack, strangerHealth); if (r!=null){ lastPickPriority=1; return r; }
         r = p2(strangerAttack, strangerHealth);      if (r!=null){ lastPickPriority=2; return r; }
         r = p3(strangerAttack, strangerHealth);      if (r!=null){ lastPickPriority=3; return r; }
@@ -411,22 +686,202 @@ public class Deck {
     }
 
     public Card findBestStealCandidate(int attackLimit, int healthLimit){
+        if (pool != null) return pool.findBestStealCandidate(attackLimit, healthLimit);
         ANode band = bandForSteal(root, attackLimit+1, healthLimit);
         if (band == null) return null;
-        return hLowerBound(band.rootH, healthLimit+1);
+        return bandLowerBound(band, healthLimit+1);
+    }
+
+    // ----- Bulk export / load -----
+    public void copyInOrder(Card[] out){
+        if (pool != null){ pool.copyInOrder(out); return; }
+        copyA(root, out, 0);
+    }
+
+    private static int copyA(ANode n, Card[] out, int i){
+        if (n==null) return i;
+        i = copyA(n.left, out, i);
+        if (n.rootH != null) i = copyH(n.rootH, out, i);
+        else { System.arraycopy(n.cards, 0, out, i, n.bandLen); i += n.bandLen; }
+        return copyA(n.right, out, i);
+    }
+
+    private static int copyH(HNode n, Card[] out, int i){
+        if (n==null) return i;
+        i = copyH(n.left, out, i);
+        out[i++] = n.card;
+        return copyH(n.right, out, i);
+    }
+
+    // Build perfectly balanced trees straight from a sorted run: O(n), no rotations
+    public void loadSorted(Card[] cards, int n){
+        healthRank = null; // rebuilt on the next health query
+        if (pool != null){ pool.loadSorted(cards, n); return; }
+        int bands = 0;
+        for (int i = 0; i < n; i++) if (i==0 || cards[i].getACur() != cards[i-1].getACur()) bands++;
+        int[] bandStart = new int[bands+1];
+        for (int i = 0, b = 0; i < n; i++) if (i==0 || cards[i].getACur() != cards[i-1].getACur()) bandStart[b++] = i;
+        bandStart[bands] = n;
+
+        root = buildA(cards, bandStart, 0, bands-1);
+        cardCount = n;
+        bandCount = bands;
+    }
+
+    private static ANode buildA(Card[] cards, int[] bandStart, int lo, int hi){
+        if (lo > hi) return null;
+        int mid = (lo+hi) >>> 1;
+        int start = bandStart[mid], len = bandStart[mid+1] - start;
+        ANode n = new ANode(cards[start]);
+        if (len > PROMOTE){
+            n.rootH = buildH(cards, start, start+len-1);
+            n.keys = null; n.cards = null; n.bandLen = 0;
+        } else {
+            n.keys = new long[len]; n.cards = new Card[len]; n.bandLen = len;
+            for (int i = 0; i < len; i++){ n.cards[i] = cards[start+i]; n.keys[i] = key(cards[start+i]); }
+        }
+        n.left = buildA(cards, bandStart, lo, mid-1);
+        n.right = buildA(cards, bandStart, mid+1, hi);
+        updA(n);
+        return n;
+    }
+
+    private static HNode buildH(Card[] cards, int lo, int hi){
+        if (lo > hi) return null;
+        int mid = (lo+hi) >>> 1;
+        HNode n = new HNode(cards[mid]);
+        n.left = buildH(cards, lo, mid-1);
+        n.right = buildH(cards, mid+1, hi);
+        updH(n);
+        return n;
+    }
+
+    // ----- Analytics queries -----
+    // Attack-only ranges are summed from band sizes and health-only ranges come from the
+    // health rank index, both O(log n). A range on both axes walks the attack tree and
+    // skips every subtree whose attack/health ranges lie wholly inside or outside the
+    // query; only the bands on the query's edges are counted in their health trees. That
+    // is fast when attack and health go together but O(n) in the worst case, e.g. when
+    // health alternates high/low along the attack order and the box cuts between them.
+    // The pool answers the attack-side queries from the same summaries (CardPool).
+    public int countRange(int aLo, int aHi, int hLo, int hHi){
+        if (getCardCount() == 0 || aLo > aHi || hLo > hHi) return 0;
+        if (pool != null){
+            if (pool.coversAttack(aLo, aHi)) return healthRank().count(hLo, hHi);
+            return pool.countRange(aLo, aHi, hLo, hHi);
+        }
+        if (hLo <= root.subtreeMinH && hHi >= root.subtreeMaxH) return countA(root, aLo, aHi);
+        if (aLo <= root.subtreeMinA && aHi >= root.subtreeMaxA) return healthRank().count(hLo, hHi);
+        return countBox(root, aLo, aHi, hLo, hHi);
+    }
+
+    // Cards in bands with aLo <= A <= aHi
+    private static int countA(ANode n, int aLo, int aHi){
+        int count = 0;
+        while (n != null){ // split point: first node inside the range
+            if (n.A < aLo) n = n.right;
+            else if (n.A > aHi) n = n.left;
+            else break;
+        }
+        if (n == null) return 0;
+        count += bandSize(n);
+        for (ANode l = n.left; l != null; ){ // right flank of the left subtree
+            if (l.A >= aLo){ count += bandSize(l) + szA(l.right); l = l.left; }
+            else l = l.right;
+        }
+        for (ANode r = n.right; r != null; ){
+            if (r.A <= aHi){ count += bandSize(r) + szA(r.left); r = r.right; }
+            else r = r.left;
+        }
+        return count;
+    }
+
+    private static int countBox(ANode n, int aLo, int aHi, int hLo, int hHi){
+        if (n == null || n.subtreeMaxA < aLo || n.subtreeMinA > aHi
+                || n.subtreeMaxH < hLo || n.subtreeMinH > hHi) return 0;
+        if (n.subtreeMinA >= aLo && n.subtreeMaxA <= aHi
+                && n.subtreeMinH >= hLo && n.subtreeMaxH <= hHi) return n.size;
+        int count = countBox(n.left, aLo, aHi, hLo, hHi) + countBox(n.right, aLo, aHi, hLo, hHi);
+        if (n.A >= aLo && n.A <= aHi) count += bandCountBelow(n, hHi, true) - bandCountBelow(n, hLo, false);
+        return count;
+    }
+
+    // Cards in a band's health tree with H < h (or <= h when inclusive)
+    private static int hCountBelow(HNode n, int h, boolean inclusive){
+        int count = 0;
+        while (n != null){
+            int v = n.card.getHCur();
+            if (v < h || (inclusive && v == h)){ count += szH(n.left) + 1; n = n.right; }
+            else n = n.left;
+        }
+        return count;
+    }
+
+    // k-th from the top in (A, H, order): walk bands from the right by subtree size
+    public Card kthByAttack(int k){
+        if (pool != null) return pool.kthByAttack(k);
+        if (k < 1 || k > cardCount) return null;
+        ANode n = root;
+        while (n != null){
+            int rs = szA(n.right);
+            if (k <= rs){ n = n.right; continue; }
+            k -= rs;
+            int band = bandSize(n);
+            if (k <= band) return bandSelect(n, band - k);
+            k -= band;
+            n = n.left;
+        }
+        return null;
+    }
+
+    // i-th (0-based) smallest card of a band's health tree
+    private static Card hSelect(HNode n, int i){
+        while (true){
+            int ls = szH(n.left);
+            if (i < ls) n = n.left;
+            else if (i == ls) return n.card;
+            else { i -= ls + 1; n = n.right; }
+        }
+    }
+
+    public Card kthByHealth(int k){
+        return healthRank().kthFromTop(k);
+    }
+
+    public long ceilingAttack(int a){
+        if (pool != null) return pool.ceilingAttack(a);
+        long ans = NO_VALUE;
+        for (ANode n = root; n != null; ){
+            if (n.A >= a){ ans = n.A; n = n.left; }
+            else n = n.right;
+        }
+        return ans;
+    }
+
+    public long ceilingHealth(int h){
+        return healthRank().ceiling(h);
+    }
+
+    private HealthRankIndex healthRank(){
+        if (healthRank == null) healthRank = HealthRankIndex.of(this);
+        return healthRank;
     }
 
-    // ----- Sanity checker for counts (optional debug) -----
+    // ----- Sanity checker for counts (optional debug, see checkLevel) -----
     public void verifyCount(){
-        int real = countAll(root);
-        if (real != cardCount){
-            System.out.println("[VERIFY] Mismatch: real="+real+" stored="+cardCount);
+        if (checkLevel == CHECK_OFF) return;
+        int real, stored = getCardCount();
+        if (pool != null) real = (checkLevel == CHECK_FULL) ? pool.countAll() : pool.summarySize();
+        else              real = (checkLevel == CHECK_FULL) ? countAll(root) : szA(root);
+        if (real != stored){
+            System.out.println("[VERIFY] Mismatch: real="+real+" stored="+stored);
         }
     }
 
     private static int countAll(ANode n){
         if (n==null) return 0;
-        return countAll(n.left) + countH(n.rootH) + countAll(n.right);
+        int band = n.rootH != null ? countH(n.rootH) : n.bandLen;
+        return countAll(n.left) + band + countAll(n.right);
     }
     private static int countH(HNode n){
         if (n==null) return 0;
@@ -0,0 +1,215 @@
+/**
+ * The deck operations GameManager relies on, so the index engine can be
+ * chosen per workload (see create()).
+ *
+ * Engines must agree on every pick:
+ *  - battle: P1 = smallest A_cur >= strangerHealth among cards with
+ *    H_cur > strangerAttack, then smallest (H_cur, order) in that attack;
+ *    P2 = largest A_cur < strangerHealth among cards with H_cur > strangerAttack,
+ *    then smallest (H_cur, order); P3 = smallest A_cur >= strangerHealth with
+ *    some H_cur <= strangerAttack, then smallest (H_cur, order) of that attack;
+ *    P4 = largest A_cur, then smallest (H_cur, order).
+ *  - steal: smallest (A_cur, H_cur, order) with A_cur > attackLimit and
+ *    H_cur > healthLimit.
+ */
+public interface DeckIndex {
+    void insert(Card c);
+
+    // Remove a card (located by its current A/H/order)
+    void delete(Card c);
+
+    // Move a card to new (A_cur, H_cur, order), updating the card itself
+    default void reposition(Card c, int newA, int newH, int newOrder) {
+        delete(c);
+        c.setHCur(newH);
+        c.setACur(newA);
+        c.setOrder(newOrder);
+        insert(c);
+    }
+
+    int getCardCount();
+
+    Card findOptimalBattleCard(int strangerAttack, int strangerHealth);
+
+    // Priority class (1..4) of the last findOptimalBattleCard, 0 if it found nothing
+    int getLastPickPriority();
+
+    Card findBestStealCandidate(int attackLimit, int healthLimit);
+
+    // ----- bulk export / load (snapshots) -----
+    // Fill out[0..getCardCount()) with the cards in (A_cur, H_cur, order) order
+    void copyInOrder(Card[] out);
+
+    // Replace the contents with cards[0..n), which must be sorted by
+    // (A_cur, H_cur, order); engines build their trees directly from the run
+    default void loadSorted(Card[] cards, int n) {
+        for (int i = 0; i < n; i++) insert(cards[i]);
+    }
+
+    /**
+     * Add cards[0..n) in one go, leaving the array as it is. When the run is
+     * not small next to the deck, the cards are sorted, merged with the deck's
+     * in-order contents and rebuilt through loadSorted: O(n + k) after the
+     * sort instead of k rebalancing inserts. Keys are unique, so every pick
+     * afterwards is the same as after single inserts.
+     */
+    default void bulkInsert(Card[] cards, int n) {
+        int existing = getCardCount();
+        if (n == 0) return;
+        if (existing > BULK_RATIO * (long) n) {
+            for (int i = 0; i < n; i++) insert(cards[i]);
+            return;
+        }
+        Card[] added = new Card[n];
+        System.arraycopy(cards, 0, added, 0, n);
+        sortByKey(added, n);
+
+        Card[] merged = new Card[existing + n];
+        if (existing == 0) {
+            System.arraycopy(added, 0, merged, 0, n);
+        } else {
+            Card[] old = new Card[existing];
+            copyInOrder(old);
+            int i = 0, j = 0, k = 0;
+            while (i < existing && j < n)
+                merged[k++] = compareKey(added[j], old[i]) < 0 ? added[j++] : old[i++];
+            while (i < existing) merged[k++] = old[i++];
+            while (j < n) merged[k++] = added[j++];
+        }
+        loadSorted(merged, merged.length);
+    }
+
+    // bulkInsert inserts one by one when the deck is more than this many times the run
+    int BULK_RATIO = 16;
+
+    // (A_cur, H_cur, order) order used by copyInOrder/loadSorted
+    static int compareKey(Card x, Card y) {
+        if (x.getACur() != y.getACur()) return Integer.compare(x.getACur(), y.getACur());
+        if (x.getHCur() != y.getHCur()) return Integer.compare(x.getHCur(), y.getHCur());
+        return Integer.compare(x.getOrder(), y.getOrder());
+    }
+
+    // (H_cur, A_cur, order) order used by the health rankings
+    static int compareHealthKey(Card x, Card y) {
+        if (x.getHCur() != y.getHCur()) return Integer.compare(x.getHCur(), y.getHCur());
+        if (x.getACur() != y.getACur()) return Integer.compare(x.getACur(), y.getACur());
+        return Integer.compare(x.getOrder(), y.getOrder());
+    }
+
+    // Stable bottom-up merge sort of a[0..n) by compareKey
+    static void sortByKey(Card[] a, int n) {
+        sortCards(a, n, false);
+    }
+
+    // Same, by compareHealthKey
+    static void sortByHealthKey(Card[] a, int n) {
+        sortCards(a, n, true);
+    }
+
+    private static void sortCards(Card[] a, int n, boolean byHealth) {
+        Card[] src = a, dst = new Card[n];
+        for (int width = 1; width < n; width *= 2) {
+            for (int lo = 0; lo < n; lo += 2 * width) {
+                int mid = Math.min(lo + width, n), hi = Math.min(lo + 2 * width, n);
+                int i = lo, j = mid, k = lo;
+                while (i < mid && j < hi) {
+                    int c = byHealth ? compareHealthKey(src[j], src[i]) : compareKey(src[j], src[i]);
+                    dst[k++] = c < 0 ? src[j++] : src[i++];
+                }
+                while (i < mid) dst[k++] = src[i++];
+                while (j < hi) dst[k++] = src[j++];
+            }
+            Card[] t = src; src = dst; dst = t;
+        }
+        if (src != a) System.arraycopy(src, 0, a, 0, n);
+    }
+
+    // ----- analytics queries (count_range, kth_strongest_*, histogram_*) -----
+    // The defaults scan an in-order copy of the deck, O(n) per query. Every engine here overrides them:
+    // the attack side from its own tree's sizes, the health side from a HealthRankIndex kept in step,
+    // O(log n). A count bounded on both axes prunes by subtree ranges and is O(n) in the worst case
+
+    // Number of cards with aLo <= A_cur <= aHi and hLo <= H_cur <= hHi
+    default int countRange(int aLo, int aHi, int hLo, int hHi) {
+        Card[] all = new Card[getCardCount()];
+        copyInOrder(all);
+        int count = 0;
+        for (Card c : all)
+            if (c.getACur() >= aLo && c.getACur() <= aHi && c.getHCur() >= hLo && c.getHCur() <= hHi) count++;
+        return count;
+    }
+
+    // k-th card (1-based) from the top of (A_cur, H_cur, order) order, null if k is out of range
+    default Card kthByAttack(int k) {
+        int n = getCardCount();
+        if (k < 1 || k > n) return null;
+        Card[] all = new Card[n];
+        copyInOrder(all);
+        return all[n - k];
+    }
+
+    // k-th card (1-based) from the top of (H_cur, A_cur, order) order, null if k is out of range
+    default Card kthByHealth(int k) {
+        int n = getCardCount();
+        if (k < 1 || k > n) return null;
+        Card[] all = new Card[n];
+        copyInOrder(all);
+        sortByHealthKey(all, n);
+        return all[n - k];
+    }
+
+    // Result of ceilingAttack/ceilingHealth when there is no such value; outside the int
+    // range, so a card with A_cur or H_cur Integer.MAX_VALUE is still found
+    long NO_VALUE = Long.MAX_VALUE;
+
+    // Smallest A_cur >= a in the deck, NO_VALUE if there is none
+    default long ceilingAttack(int a) {
+        Card[] all = new Card[getCardCount()];
+        copyInOrder(all);
+        for (Card c : all) if (c.getACur() >= a) return c.getACur();
+        return NO_VALUE;
+    }
+
+    // Smallest H_cur >= h in the deck, NO_VALUE if there is none
+    default long ceilingHealth(int h) {
+        Card[] all = new Card[getCardCount()];
+        copyInOrder(all);
+        long best = NO_VALUE;
+        for (Card c : all) if (c.getHCur() >= h && c.getHCur() < best) best = c.getHCur();
+        return best;
+    }
+
+    // ----- integrity checks (Deck.CHECK_*) -----
+    void setCheckLevel(int level);
+    void verifyCount();
+
+    // ----- structure statistics for Metrics; -1 where an engine has no such structure -----
+    int getBandCount();
+    int getAttackHeight();
+    int getMaxBandHeight();
+    long getAttackRotations();
+    long getHealthRotations();
+
+    /**
+     * Engine by name: "nested" (Deck: attack-band AVL of small sorted arrays or health AVLs),
+     * "pooled" (the same index in primitive arrays, see CardPool) or
+     * "flat" (FlatDeck: one AVL over (A, H, order) with health summaries) or
+     * "persistent" (PersistentDeck: the nested index with immutable, path-copied
+     * nodes, published per mutation for lock-free readers).
+     */
+    static DeckIndex create(String engine) {
+        switch (engine) {
+            case "nested": return new Deck(false);
+            case "pooled": return new Deck(true);
+            case "flat": return new FlatDeck();
+            case "persistent": return new PersistentDeck();
+            default: throw new IllegalArgumentException("Unknown deck engine: " + engine);
+        }
+    }
+
+    // Same, wrapped in a CachingDeck of cacheEntries battle/steal picks when cacheEntries > 0
+    static DeckIndex create(String engine, int cacheEntries) {
+        DeckIndex deck = create(engine);
+        return cacheEntries > 0 ? new CachingDeck(deck, cacheEntries) : deck;
+    }
+}
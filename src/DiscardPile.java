@@ -0,0 +1,184 @@
+/**
+ * Discard pile for the Type-2 revival rules: an AVL over (missing health,
+ * order) whose nodes carry the subtree size and the subtree sum of missing
+ * health.
+ *
+ * A discarded card needs its full H_base back to be revived, and revival
+ * spends the heal pool on the cheapest cards first. The cards that fit the
+ * pool are therefore always a prefix in key order, and its length comes out
+ * of one descent over the subtree sums (countAffordable); reviving k cards
+ * then costs k removeCheapest calls, O(k log n) in all, without looking at
+ * the cards that stay in the pile.
+ *
+ * Keys are copied into the nodes when a card is added.
+ */
+public class DiscardPile {
+    private static final class Node {
+        Card card;
+        int missing, ord;   // key
+        Node left, right;
+        int height, size;
+        long sum;           // subtree sum of missing
+
+        Node(Card c) {
+            this.card = c;
+            this.missing = c.getHBase();
+            this.ord = c.getOrder();
+            this.height = 1;
+            this.size = 1;
+            this.sum = missing;
+        }
+    }
+
+    private Node root;
+    private Card removedMin; // result of the last deleteMin recursion
+
+    public int size() { return root==null?0:root.size; }
+
+    // Health the whole pile would need to be revived
+    public long totalMissing() { return root==null?0:root.sum; }
+
+    public void add(Card c) {
+        root = insert(root, new Node(c));
+    }
+
+    /**
+     * How many cards removeCheapest would hand out before their missing
+     * health exceeds budget: the longest key-order prefix with sum <= budget.
+     */
+    public int countAffordable(long budget) {
+        int count = 0;
+        Node n = root;
+        while (n != null) {
+            long leftSum = sum(n.left);
+            if (budget < leftSum) { n = n.left; continue; }
+            budget -= leftSum;
+            count += size(n.left);
+            if (budget < n.missing) break;
+            budget -= n.missing;
+            count++;
+            n = n.right;
+        }
+        return count;
+    }
+
+    // Remove and return the card needing the least health (earliest order first), null if empty
+    public Card removeCheapest() {
+        if (root == null) return null;
+        root = deleteMin(root);
+        Card c = removedMin;
+        removedMin = null;
+        return c;
+    }
+
+    // Remove a card added earlier, found by its key (H_base and order must be as when it was added)
+    public void remove(Card c) {
+        root = delete(root, c.getHBase(), c.getOrder());
+    }
+
+    // -------- AVL plumbing --------
+    private static int ht(Node n){ return n==null?0:n.height; }
+    private static int size(Node n){ return n==null?0:n.size; }
+    private static long sum(Node n){ return n==null?0:n.sum; }
+
+    private static void upd(Node n){
+        n.height = 1 + Math.max(ht(n.left), ht(n.right));
+        n.size = 1 + size(n.left) + size(n.right);
+        n.sum = n.missing + sum(n.left) + sum(n.right);
+    }
+
+    private static Node rotRight(Node y){
+        Node x = y.left, t2 = x.right;
+        x.right = y; y.left = t2;
+        upd(y); upd(x);
+        return x;
+    }
+
+    private static Node rotLeft(Node x){
+        Node y = x.right, t2 = y.left;
+        y.left = x; x.right = t2;
+        upd(x); upd(y);
+        return y;
+    }
+
+    private static int bf(Node n){ return n==null?0:ht(n.left)-ht(n.right); }
+
+    private static Node bal(Node n){
+        int b = bf(n);
+        if (b > 1){
+            if (bf(n.left) < 0) n.left = rotLeft(n.left);
+            return rotRight(n);
+        }
+        if (b < -1){
+            if (bf(n.right) > 0) n.right = rotRight(n.right);
+            return rotLeft(n);
+        }
+        return n;
+    }
+
+    private static Node insert(Node n, Node leaf){
+        if (n==null) return leaf;
+        boolean left = leaf.missing != n.missing ? leaf.missing < n.missing : leaf.ord < n.ord;
+        if (left) n.left = insert(n.left, leaf);
+        else      n.right = insert(n.right, leaf);
+        upd(n);
+        return bal(n);
+    }
+
+    private Node deleteMin(Node n){
+        if (n.left == null){
+            removedMin = n.card;
+            return n.right;
+        }
+        n.left = deleteMin(n.left);
+        upd(n);
+        return bal(n);
+    }
+
+    private Node delete(Node n, int missing, int ord){
+        if (n==null) return null;
+        if (missing != n.missing || ord != n.ord){
+            boolean left = missing != n.missing ? missing < n.missing : ord < n.ord;
+            if (left) n.left = delete(n.left, missing, ord);
+            else      n.right = delete(n.right, missing, ord);
+        } else {
+            if (n.left == null) return n.right;
+            if (n.right == null) return n.left;
+            // replace by the successor
+            Node m = n.right;
+            while (m.left != null) m = m.left;
+            Node r = deleteMin(n.right);
+            removedMin = null;
+            m.left = n.left; m.right = r;
+            n = m;
+        }
+        upd(n);
+        return bal(n);
+    }
+
+    // -------- bulk export / load (snapshots) --------
+    // Fill out[0..size()) with the pile in key order
+    public void copyInOrder(Card[] out){ copy(root, out, 0); }
+
+    private static int copy(Node n, Card[] out, int i){
+        if (n==null) return i;
+        i = copy(n.left, out, i);
+        out[i++] = n.card;
+        return copy(n.right, out, i);
+    }
+
+    // Replace the pile with cards[0..n), already in key order (as copyInOrder wrote them)
+    public void loadSorted(Card[] cards, int n){
+        root = build(cards, 0, n-1);
+    }
+
+    private static Node build(Card[] cards, int lo, int hi){
+        if (lo > hi) return null;
+        int mid = (lo+hi) >>> 1;
+        Node n = new Node(cards[mid]);
+        n.left = build(cards, lo, mid-1);
+        n.right = build(cards, mid+1, hi);
+        upd(n);
+        return n;
+    }
+}
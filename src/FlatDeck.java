@@ -0,0 +1,326 @@
+/**
+ * Single-level deck index: one AVL over (A_cur, H_cur, order) whose nodes
+ * carry subtree min/max health and size.
+ *
+ * Deck groups cards into attack bands and prunes bands by their health
+ * summaries. When most cards have distinct attack values that turns into a
+ * tree of one-card bands with a second tree hanging off every node. Here
+ * every query is a single "first/last node in key order whose health
+ * passes a bound" descent over one tree, pruned by the subtree health
+ * range, so the cost does not depend on how cards are spread over bands.
+ *
+ * Keys are copied into the nodes (GameManager only changes a card's stats
+ * while it is out of the index).
+ */
+public class FlatDeck implements DeckIndex {
+    private static final class Node {
+        Card card;
+        int a, h, ord;      // key
+        Node left, right;
+        int height, size;
+        int minH, maxH;     // subtree health range
+
+        Node(Card c) {
+            this.card = c;
+            this.a = c.getACur();
+            this.h = c.getHCur();
+            this.ord = c.getOrder();
+            this.height = 1;
+            this.size = 1;
+            this.minH = this.maxH = this.h;
+        }
+    }
+
+    private Node root;
+    private int cardCount;
+    private int lastPickPriority;
+    private int checkLevel;
+    private boolean removed; // result flag of the delete recursion
+    private long rotations;
+
+    // Health-ordered rank index for the analytics queries; built on first use, then kept in step
+    private HealthRankIndex healthRank;
+
+    public FlatDeck() {
+        root = null;
+        cardCount = 0;
+        lastPickPriority = 0;
+        checkLevel = Deck.CHECK_OFF;
+    }
+
+    public int getCardCount() { return cardCount; }
+    public int getLastPickPriority() { return lastPickPriority; }
+
+    public void insert(Card c) {
+        root = insert(root, new Node(c));
+        cardCount++;
+        if (healthRank != null) healthRank.insert(c);
+    }
+
+    public void delete(Card c) {
+        removed = false;
+        root = delete(root, c.getACur(), c.getHCur(), c.getOrder());
+        if (removed){
+            cardCount--;
+            if (healthRank != null) healthRank.delete(c);
+        }
+    }
+
+    // -------- AVL plumbing --------
+    private static int ht(Node n){ return n==null?0:n.height; }
+    private static int sz(Node n){ return n==null?0:n.size; }
+
+    private static void upd(Node n){
+        n.height = 1 + Math.max(ht(n.left), ht(n.right));
+        n.size = 1 + sz(n.left) + sz(n.right);
+        n.minH = n.maxH = n.h;
+        if (n.left  != null){ n.minH = Math.min(n.minH, n.left.minH);  n.maxH = Math.max(n.maxH, n.left.maxH); }
+        if (n.right != null){ n.minH = Math.min(n.minH, n.right.minH); n.maxH = Math.max(n.maxH, n.right.maxH); }
+    }
+
+    // Order by (A, H, order)
+    private static int cmp(int a, int h, int ord, Node n){
+        if (a != n.a) return a < n.a ? -1 : 1;
+        if (h != n.h) return h < n.h ? -1 : 1;
+        return Integer.compare(ord, n.ord);
+    }
+
+    private static Node rotRight(Node y){
+        Node x = y.left, t2 = x.right;
+        x.right = y; y.left = t2;
+        upd(y); upd(x);
+        return x;
+    }
+
+    private static Node rotLeft(Node x){
+        Node y = x.right, t2 = y.left;
+        y.left = x; x.right = t2;
+        upd(x); upd(y);
+        return y;
+    }
+
+    private static int bf(Node n){ return n==null?0:ht(n.left)-ht(n.right); }
+
+    private Node bal(Node n){
+        int b = bf(n);
+        if (b > 1){
+            if (bf(n.left) < 0){ n.left = rotLeft(n.left); rotations++; }
+            rotations++;
+            return rotRight(n);
+        }
+        if (b < -1){
+            if (bf(n.right) > 0){ n.right = rotRight(n.right); rotations++; }
+            rotations++;
+            return rotLeft(n);
+        }
+        return n;
+    }
+
+    private Node insert(Node n, Node leaf){
+        if (n==null) return leaf;
+        if (cmp(leaf.a, leaf.h, leaf.ord, n) < 0) n.left = insert(n.left, leaf);
+        else                                        n.right = insert(n.right, leaf);
+        upd(n);
+        return bal(n);
+    }
+
+    private static Node minNode(Node n){
+        while (n.left != null) n = n.left;
+        return n;
+    }
+
+    private Node delete(Node n, int a, int h, int ord){
+        if (n==null) return null;
+        int c = cmp(a, h, ord, n);
+        if (c < 0) n.left = delete(n.left, a, h, ord);
+        else if (c > 0) n.right = delete(n.right, a, h, ord);
+        else {
+            removed = true;
+            if (n.left==null) return n.right;
+            if (n.right==null) return n.left;
+            Node succ = minNode(n.right);
+            n.card = succ.card; n.a = succ.a; n.h = succ.h; n.ord = succ.ord;
+            n.right = delete(n.right, succ.a, succ.h, succ.ord);
+        }
+        upd(n);
+        return bal(n);
+    }
+
+    // -------- order searches pruned by subtree health --------
+    // First node in key order with A >= aMin and H >= hMin
+    private static Node firstAtLeast(Node n, int aMin, int hMin){
+        if (n==null || n.maxH < hMin) return null;
+        if (n.a >= aMin){
+            Node r = firstAtLeast(n.left, aMin, hMin);
+            if (r != null) return r;
+            if (n.h >= hMin) return n;
+        }
+        return firstAtLeast(n.right, aMin, hMin);
+    }
+
+    // First node in key order with A >= aMin and H <= hMax
+    private static Node firstAtMost(Node n, int aMin, int hMax){
+        if (n==null || n.minH > hMax) return null;
+        if (n.a >= aMin){
+            Node r = firstAtMost(n.left, aMin, hMax);
+            if (r != null) return r;
+            if (n.h <= hMax) return n;
+        }
+        return firstAtMost(n.right, aMin, hMax);
+    }
+
+    // Last node in key order with A < aLimit and H >= hMin
+    private static Node lastBelow(Node n, int aLimit, int hMin){
+        if (n==null || n.maxH < hMin) return null;
+        if (n.a < aLimit){
+            Node r = lastBelow(n.right, aLimit, hMin);
+            if (r != null) return r;
+            if (n.h >= hMin) return n;
+        }
+        return lastBelow(n.left, aLimit, hMin);
+    }
+
+    private static Card cardOf(Node n){ return n==null ? null : n.card; }
+
+    public Card findOptimalBattleCard(int strangerAttack, int strangerHealth){
+        int need = strangerAttack + 1;
+        // P1: survive and kill
+        Node r = firstAtLeast(root, strangerHealth, need);
+        if (r != null){ lastPickPriority = 1; return r.card; }
+        // P2: survive; strongest such attack, then weakest health in it
+        r = lastBelow(root, strangerHealth, need);
+        if (r != null){ lastPickPriority = 2; return cardOf(firstAtLeast(root, r.a, need)); }
+        // P3: kill but die; the first card of the smallest such attack
+        r = firstAtMost(root, strangerHealth, strangerAttack);
+        if (r != null){ lastPickPriority = 3; return r.card; }
+        // P4: weakest-health card of the largest attack
+        if (root != null){
+            Node top = root;
+            while (top.right != null) top = top.right;
+            lastPickPriority = 4;
+            return cardOf(firstAtLeast(root, top.a, Integer.MIN_VALUE));
+        }
+        lastPickPriority = 0;
+        return null;
+    }
+
+    public Card findBestStealCandidate(int attackLimit, int healthLimit){
+        return cardOf(firstAtLeast(root, attackLimit + 1, healthLimit + 1));
+    }
+
+    // -------- analytics queries --------
+    // Attack-only ranges count whole subtrees by size, O(log n); health-only ranges come from
+    // the health rank index. A range on both axes walks the attack range's two flanks and
+    // skips subtrees whose health range lies wholly inside or outside the query, which is
+    // O(n) in the worst case (health interleaved along the attack order).
+    public int countRange(int aLo, int aHi, int hLo, int hHi){
+        if (root == null || aLo > aHi || hLo > hHi) return 0;
+        if (aLo <= minNode(root).a && aHi >= maxNode(root).a) return healthRank().count(hLo, hHi);
+        Node n = root;
+        while (n != null && (n.a < aLo || n.a > aHi)) n = n.a < aLo ? n.right : n.left; // split point
+        if (n == null) return 0;
+        int count = n.h >= hLo && n.h <= hHi ? 1 : 0;
+        for (Node l = n.left; l != null && l.maxH >= hLo && l.minH <= hHi; ){ // cards with A >= aLo
+            if (l.a >= aLo){ count += (l.h >= hLo && l.h <= hHi ? 1 : 0) + countH(l.right, hLo, hHi); l = l.left; }
+            else l = l.right;
+        }
+        for (Node r = n.right; r != null && r.maxH >= hLo && r.minH <= hHi; ){ // cards with A <= aHi
+            if (r.a <= aHi){ count += (r.h >= hLo && r.h <= hHi ? 1 : 0) + countH(r.left, hLo, hHi); r = r.right; }
+            else r = r.left;
+        }
+        return count;
+    }
+
+    // Cards of a subtree with hLo <= H <= hHi
+    private static int countH(Node n, int hLo, int hHi){
+        if (n==null || n.maxH < hLo || n.minH > hHi) return 0;
+        if (n.minH >= hLo && n.maxH <= hHi) return n.size;
+        return (n.h >= hLo && n.h <= hHi ? 1 : 0) + countH(n.left, hLo, hHi) + countH(n.right, hLo, hHi);
+    }
+
+    private static Node maxNode(Node n){
+        while (n.right != null) n = n.right;
+        return n;
+    }
+
+    // k-th from the top in (A, H, order): walk down by subtree size
+    public Card kthByAttack(int k){
+        if (k < 1 || k > cardCount) return null;
+        Node n = root;
+        while (true){
+            int rs = sz(n.right);
+            if (k <= rs) n = n.right;
+            else if (k == rs + 1) return n.card;
+            else { k -= rs + 1; n = n.left; }
+        }
+    }
+
+    public Card kthByHealth(int k){
+        return healthRank().kthFromTop(k);
+    }
+
+    public long ceilingAttack(int a){
+        long ans = NO_VALUE;
+        for (Node n = root; n != null; ){
+            if (n.a >= a){ ans = n.a; n = n.left; }
+            else n = n.right;
+        }
+        return ans;
+    }
+
+    public long ceilingHealth(int h){
+        return healthRank().ceiling(h);
+    }
+
+    private HealthRankIndex healthRank(){
+        if (healthRank == null) healthRank = HealthRankIndex.of(this);
+        return healthRank;
+    }
+
+    // -------- bulk export / load --------
+    public void copyInOrder(Card[] out){ copy(root, out, 0); }
+
+    private static int copy(Node n, Card[] out, int i){
+        if (n==null) return i;
+        i = copy(n.left, out, i);
+        out[i++] = n.card;
+        return copy(n.right, out, i);
+    }
+
+    public void loadSorted(Card[] cards, int n){
+        root = build(cards, 0, n-1);
+        cardCount = n;
+        healthRank = null; // rebuilt on the next health query
+    }
+
+    private static Node build(Card[] cards, int lo, int hi){
+        if (lo > hi) return null;
+        int mid = (lo+hi) >>> 1;
+        Node n = new Node(cards[mid]);
+        n.left = build(cards, lo, mid-1);
+        n.right = build(cards, mid+1, hi);
+        upd(n);
+        return n;
+    }
+
+    // -------- integrity checks / statistics --------
+    public void setCheckLevel(int level){ checkLevel = level; }
+
+    public void verifyCount(){
+        if (checkLevel == Deck.CHECK_OFF) return;
+        int real = checkLevel == Deck.CHECK_FULL ? count(root) : sz(root);
+        if (real != cardCount){
+            System.out.println("[VERIFY] Mismatch: real="+real+" stored="+cardCount);
+        }
+    }
+
+    private static int count(Node n){
+        return n==null ? 0 : 1 + count(n.left) + count(n.right);
+    }
+
+    public int getBandCount(){ return -1; }
+    public int getAttackHeight(){ return ht(root); }
+    public int getMaxBandHeight(){ return -1; }
+    public long getAttackRotations(){ return rotations; }
+    public long getHealthRotations(){ return -1; }
+}
@@ -0,0 +1,319 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Multi-tenant registry: many games in one process, each with its own
+ * GameManager, addressed by a game id from any number of client threads.
+ *
+ * Games live in a hash table split into STRIPES independent stripes, each
+ * a chained table behind its own lock; a stripe lock is held only to find
+ * or add a game, never while a command runs. Every game has its own lock
+ * as well, so one game's commands run one at a time, in arrival order per
+ * client, while different games never wait for each other.
+ *
+ * Resident games are bounded: when more than maxResident are in memory, the
+ * least recently used idle ones are written to spillDir as GameSnapshots
+ * and dropped; a sweeper thread also evicts games idle for idleMillis. The
+ * next command for an evicted game loads it back (and removes the file),
+ * so an evicted game continues exactly where it stopped. close() spills
+ * every resident game, and a later host on the same directory resumes
+ * them. The entry of a game (its id and statistics) is never removed.
+ *
+ * All games intern card names into one shared NameTable, like BatchRunner.
+ */
+public class GameHost {
+    private static final int STRIPES = 64; // power of two
+
+    /** One hosted game; everything but lastUsed is guarded by lock. */
+    private static final class Tenant {
+        final String id;
+        final int hash;
+        Tenant next; // chain in the stripe table, guarded by the stripe lock
+
+        final ReentrantLock lock = new ReentrantLock();
+        final RoutedStream stream = new RoutedStream();
+        GameManager game;  // null while evicted
+        ResponseSink sink;
+        volatile long lastUsed;
+
+        // per-game statistics
+        long commands, bytesOut, loads, evictions;
+        final LatencyHistogram latency = new LatencyHistogram();
+
+        Tenant(String id, int hash) {
+            this.id = id;
+            this.hash = hash;
+        }
+    }
+
+    /** One stripe of the game table. */
+    private static final class Stripe {
+        final ReentrantLock lock = new ReentrantLock();
+        Tenant[] table = new Tenant[16];
+        int size;
+    }
+
+    /** Eviction candidate with the last-use time it was ranked by. */
+    private static final class Candidate {
+        final Tenant tenant;
+        final long stamp;
+
+        Candidate(Tenant tenant, long stamp) {
+            this.tenant = tenant;
+            this.stamp = stamp;
+        }
+    }
+
+    /** Output of a game: forwards to the stream of the client whose command is running. */
+    private static final class RoutedStream extends OutputStream {
+        OutputStream target;
+
+        @Override public void write(int b) throws IOException { target.write(b); }
+        @Override public void write(byte[] b, int off, int len) throws IOException { target.write(b, off, len); }
+        @Override public void flush() { } // the client flushes its own stream
+    }
+
+    private final Stripe[] stripes = new Stripe[STRIPES];
+    private final Path spillDir;
+    private final String engine;
+    private final int cacheEntries, checkLevel;
+    private final boolean bulkDraws;
+    private final int maxResident;
+    private final long idleMillis;
+    private final NameTable names = new NameTable(); // shared by all games
+    private final AtomicInteger games = new AtomicInteger();
+    private final AtomicInteger resident = new AtomicInteger();
+    private final AtomicBoolean evicting = new AtomicBoolean();
+    private final ScheduledExecutorService sweeper;
+
+    public GameHost(Path spillDir, String engine, int cacheEntries, int checkLevel, boolean bulkDraws,
+                    int maxResident, long idleMillis) throws IOException {
+        DeckIndex.create(engine); // fail fast on an unknown engine
+        if (maxResident < 1) throw new IllegalArgumentException("maxResident must be at least 1");
+        Files.createDirectories(spillDir);
+        this.spillDir = spillDir;
+        this.engine = engine;
+        this.cacheEntries = cacheEntries;
+        this.checkLevel = checkLevel;
+        this.bulkDraws = bulkDraws;
+        this.maxResident = maxResident;
+        this.idleMillis = idleMillis;
+        for (int i = 0; i < STRIPES; i++) stripes[i] = new Stripe();
+
+        if (idleMillis > 0) {
+            sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "nightpass-evictor");
+                t.setDaemon(true);
+                return t;
+            });
+            long period = Math.max(1, idleMillis / 2);
+            sweeper.scheduleWithFixedDelay(() -> evict(System.currentTimeMillis() - idleMillis, maxResident),
+                    period, period, TimeUnit.MILLISECONDS);
+        } else {
+            sweeper = null;
+        }
+    }
+
+    public NameTable getNames() { return names; }
+
+    public int getGameCount() { return games.get(); }
+
+    public int getResidentCount() { return resident.get(); }
+
+    /**
+     * Run one parsed command (a CommandReader code) in game gameId, creating
+     * the game on first use and loading it back if it was evicted. The
+     * response is written to out, which the caller flushes. Returns false
+     * for an unknown command, like GameManager.handleCommand.
+     */
+    public boolean handle(String gameId, int command, CommandSource reader, OutputStream out) throws IOException {
+        Tenant t = tenant(gameId);
+        boolean ok;
+        t.lock.lock();
+        try {
+            if (t.game == null) load(t);
+            long start = System.nanoTime();
+            t.stream.target = out;
+            long before = t.sink.position();
+            try {
+                ok = t.game.handleCommand(command, reader);
+                t.sink.flush();
+            } finally {
+                t.stream.target = null;
+            }
+            t.latency.record(System.nanoTime() - start);
+            t.bytesOut += t.sink.position() - before;
+            if (ok) t.commands++;
+            t.lastUsed = System.currentTimeMillis();
+        } finally {
+            t.lock.unlock();
+        }
+        if (resident.get() > maxResident) evict(Long.MIN_VALUE, maxResident - maxResident / 8);
+        return ok;
+    }
+
+    // Find the game, adding an empty entry if it is new
+    private Tenant tenant(String id) {
+        int h = id.hashCode();
+        h ^= h >>> 16;
+        Stripe s = stripes[h & (STRIPES - 1)];
+        s.lock.lock();
+        try {
+            int i = (h >>> 6) & (s.table.length - 1);
+            for (Tenant t = s.table[i]; t != null; t = t.next)
+                if (t.hash == h && t.id.equals(id)) return t;
+            Tenant t = new Tenant(id, h);
+            t.next = s.table[i];
+            s.table[i] = t;
+            games.incrementAndGet();
+            if (++s.size > s.table.length - (s.table.length >> 2)) grow(s);
+            return t;
+        } finally {
+            s.lock.unlock();
+        }
+    }
+
+    private static void grow(Stripe s) {
+        Tenant[] old = s.table;
+        Tenant[] table = new Tenant[old.length * 2];
+        int mask = table.length - 1;
+        for (Tenant head : old) {
+            while (head != null) {
+                Tenant next = head.next;
+                int i = (head.hash >>> 6) & mask;
+                head.next = table[i];
+                table[i] = head;
+                head = next;
+            }
+        }
+        s.table = table;
+    }
+
+    // Give t a game: its spilled snapshot if there is one, else a new game (t.lock held)
+    private void load(Tenant t) throws IOException {
+        ResponseSink sink = new ResponseSink(t.stream, 1 << 12);
+        GameManager game = new GameManager(sink, DeckIndex.create(engine, cacheEntries), names);
+        game.setCheckLevel(checkLevel);
+        Path file = spillFile(t.id);
+        if (Files.exists(file)) {
+            GameSnapshot.read(file).applyTo(game);
+            Files.delete(file);
+            t.loads++;
+        }
+        game.setBulkDraws(bulkDraws);
+        t.game = game;
+        t.sink = sink;
+        resident.incrementAndGet();
+    }
+
+    // Write t's game to its spill file and drop it (t.lock held)
+    private void spill(Tenant t) throws IOException {
+        GameSnapshot.write(spillFile(t.id), t.game, t.commands, t.bytesOut);
+        t.game = null;
+        t.sink = null;
+        t.evictions++;
+        resident.decrementAndGet();
+    }
+
+    /**
+     * Evict resident games that were last used before idleBefore, then the
+     * least recently used ones until at most keep remain. Games that are
+     * running a command are skipped. One eviction pass runs at a time.
+     */
+    private void evict(long idleBefore, int keep) {
+        if (!evicting.compareAndSet(false, true)) return;
+        try {
+            ArrayList<Candidate> candidates = new ArrayList<>();
+            for (Tenant t : allTenants()) {
+                if (t.game != null) candidates.add(new Candidate(t, t.lastUsed)); // racy read, rechecked below
+            }
+            candidates.sort((x, y) -> Long.compare(x.stamp, y.stamp));
+            for (Candidate c : candidates) {
+                if (c.stamp >= idleBefore && resident.get() <= keep) break;
+                Tenant t = c.tenant;
+                if (!t.lock.tryLock()) continue;
+                try {
+                    // used since it was ranked: no longer a candidate
+                    if (t.game != null && t.lastUsed == c.stamp) spill(t);
+                } catch (IOException e) {
+                    System.out.println("Eviction of game " + t.id + " failed: " + e.getMessage());
+                } finally {
+                    t.lock.unlock();
+                }
+            }
+        } finally {
+            evicting.set(false);
+        }
+    }
+
+    private ArrayList<Tenant> allTenants() {
+        ArrayList<Tenant> all = new ArrayList<>();
+        for (Stripe s : stripes) {
+            s.lock.lock();
+            try {
+                for (Tenant head : s.table)
+                    for (Tenant t = head; t != null; t = t.next) all.add(t);
+            } finally {
+                s.lock.unlock();
+            }
+        }
+        return all;
+    }
+
+    // Spill file of a game: the id with every byte outside [A-Za-z0-9_-] written as %XX
+    private Path spillFile(String id) {
+        StringBuilder sb = new StringBuilder();
+        for (byte b : id.getBytes(StandardCharsets.UTF_8)) {
+            char c = (char) (b & 0xFF);
+            if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_' || c == '-') sb.append(c);
+            else sb.append('%').append(Character.forDigit(c >> 4, 16)).append(Character.forDigit(c & 15, 16));
+        }
+        return spillDir.resolve(sb.append(".snap").toString());
+    }
+
+    /** Per-game statistics, one row per game, plus resident and total counts. */
+    public void printStats(PrintStream out) {
+        ArrayList<Tenant> all = allTenants();
+        out.printf("%d games, %d resident (max %d)%n", all.size(), resident.get(), maxResident);
+        out.printf("%-20s %10s %12s %6s %9s %9s %10s %10s %10s%n", "game", "commands", "bytes out",
+                "loads", "evictions", "resident", "mean(ns)", "p99", "max");
+        for (Tenant t : all) {
+            t.lock.lock();
+            try {
+                out.printf("%-20s %10d %12d %6d %9d %9s %10.0f %10d %10d%n", t.id, t.commands, t.bytesOut,
+                        t.loads, t.evictions, t.game != null ? "yes" : "no", t.latency.getMean(),
+                        t.latency.getValueAtPercentile(99), t.latency.getMax());
+            } finally {
+                t.lock.unlock();
+            }
+        }
+    }
+
+    /** Stop the sweeper and spill every resident game, so a new host can resume them. */
+    public void close() throws IOException {
+        if (sweeper != null) sweeper.shutdownNow();
+        IOException failure = null;
+        for (Tenant t : allTenants()) {
+            t.lock.lock();
+            try {
+                if (t.game != null) spill(t);
+            } catch (IOException e) {
+                failure = e;
+            } finally {
+                t.lock.unlock();
+            }
+        }
+        if (failure != null) throw failure;
+    }
+}
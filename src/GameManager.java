@@ -1,63 +1,278 @@
 public class GameManager {
-    private Deck deck;
+    // Pre-encoded response fragments
+    private static final byte[] ADDED = ResponseSink.fragment("Added ");
+    private static final byte[] TO_DECK = ResponseSink.fragment(" to the deck\n");
+    private static final byte[] DECK_COUNT = ResponseSink.fragment("Number of cards in the deck: ");
+    private static final byte[] SURVIVOR_SCORE = ResponseSink.fragment("The Survivor, Score: ");
+    private static final byte[] STRANGER_SCORE = ResponseSink.fragment("The Stranger, Score: ");
+    private static final byte[] NO_STEAL = ResponseSink.fragment("No card to steal\n");
+    private static final byte[] STOLE = ResponseSink.fragment("The Stranger stole the card: ");
+    private static final byte[] NO_CARDS = ResponseSink.fragment("No cards to play, ");
+    private static final byte[] FOUND_PRIORITY = ResponseSink.fragment("Found with priority ");
+    private static final byte[] SURVIVOR_PLAYS = ResponseSink.fragment(", Survivor plays ");
+    private static final byte[] DISCARDED = ResponseSink.fragment(", the played card is discarded, ");
+    private static final byte[] RETURNED = ResponseSink.fragment(", the played card returned to deck, ");
+    private static final byte[] REVIVED = ResponseSink.fragment(" cards revived\n");
+    private static final byte[] DISCARD_PILE_COUNT = ResponseSink.fragment("Number of cards in the discard pile: ");
+    private static final byte[] IN_RANGE = ResponseSink.fragment("Cards in range: ");
+    private static final byte[] RANK = ResponseSink.fragment("Rank ");
+    private static final byte[] BY_ATTACK = ResponseSink.fragment(" by attack: ");
+    private static final byte[] BY_HEALTH = ResponseSink.fragment(" by health: ");
+    private static final byte[] NO_CARD = ResponseSink.fragment("no card\n");
+    private static final byte[] ATTACK_IS = ResponseSink.fragment(", attack ");
+    private static final byte[] HEALTH_IS = ResponseSink.fragment(", health ");
+    private static final byte[] ATTACK_HISTOGRAM = ResponseSink.fragment("Attack histogram, width ");
+    private static final byte[] HEALTH_HISTOGRAM = ResponseSink.fragment("Health histogram, width ");
+    private static final byte[] COLON = ResponseSink.fragment(": ");
+    private static final byte DASH = '-';
+    private static final byte NEWLINE = '\n';
+
+    private final ResponseSink out;
+    private final NameTable names;
+    private DeckIndex deck;
+    private final DiscardPile discardPile;
+    private SurvivorStrategy strategy; // null = the P1-P4 priority rule
     private int survivorPoints;
     private int strangerPoints;
     private int entryCounter;
 
-    // Constructor: initialize deck and score counters
-    public GameManager() {
-        this.deck = new Deck();
+    // Bulk draws (see setBulkDraws): drawn cards not yet handed to the deck
+    private boolean bulkDraws;
+    private Card[] pendingDraws;
+    private int pendingCount;
+
+    // Outcome of the last battle() call, and the change log while a lookahead runs
+    private int lastAttack, lastHealth, lastPriority, lastSurvivorDelta, lastStrangerDelta, lastRevived;
+    private boolean lastDiscarded;
+    private UndoLog undo;
+
+    // Constructor: initialize deck and score counters; responses go to out
+    public GameManager(ResponseSink out) {
+        this(out, new Deck());
+    }
+
+    // Same, with a caller-chosen deck engine (see DeckIndex.create)
+    public GameManager(ResponseSink out, DeckIndex deck) {
+        this(out, deck, new NameTable());
+    }
+
+    // Same, interning card names into a table that may be shared with other games
+    public GameManager(ResponseSink out, DeckIndex deck, NameTable names) {
+        this.out = out;
+        this.names = names;
+        this.deck = deck;
+        this.discardPile = new DiscardPile();
         this.survivorPoints = 0;
         this.strangerPoints = 0;
         this.entryCounter = 1;
     }
 
+    public DeckIndex getDeck() {
+        flushDraws();
+        return deck;
+    }
+
+    public NameTable getNames() {
+        return names;
+    }
+
+    public DiscardPile getDiscardPile() {
+        return discardPile;
+    }
+
+    public int getSurvivorPoints() {
+        return survivorPoints;
+    }
+
+    public int getStrangerPoints() {
+        return strangerPoints;
+    }
+
+    public int getEntryCounter() {
+        return entryCounter;
+    }
+
+    /**
+     * Restore scores, the order counter, the deck and the discard pile from a
+     * snapshot. cards[0..n) must be sorted by (A_cur, H_cur, order) and
+     * discarded[0..m) in DiscardPile.copyInOrder order.
+     */
+    public void restoreState(int survivorPoints, int strangerPoints, int entryCounter,
+                             Card[] cards, int n, Card[] discarded, int m) {
+        this.survivorPoints = survivorPoints;
+        this.strangerPoints = strangerPoints;
+        this.entryCounter = entryCounter;
+        this.pendingCount = 0;
+        deck.loadSorted(cards, n);
+        discardPile.loadSorted(discarded, m);
+    }
+
+    /**
+     * Queue drawn cards instead of inserting them one by one. A run of
+     * consecutive draws then goes to the deck through DeckIndex.bulkInsert
+     * as soon as any other command needs the deck; responses are unchanged.
+     */
+    public void setBulkDraws(boolean on) {
+        if (!on) flushDraws();
+        this.bulkDraws = on;
+        if (on && pendingDraws == null) pendingDraws = new Card[1024];
+    }
+
+    // Hand queued draws to the deck
+    public void flushDraws() {
+        if (pendingCount == 0) return;
+        deck.bulkInsert(pendingDraws, pendingCount);
+        for (int i = 0; i < pendingCount; i++) pendingDraws[i] = null;
+        pendingCount = 0;
+    }
+
+    // Replace the P1-P4 card choice in battles (simulations only; null restores the rule)
+    public void setSurvivorStrategy(SurvivorStrategy strategy) {
+        this.strategy = strategy;
+    }
+
+    // Enable deck integrity checks (Deck.CHECK_*) for this run
+    public void setCheckLevel(int level) {
+        deck.setCheckLevel(level);
+    }
+
+    /**
+     * Run the command the reader just parsed (a CommandReader code).
+     * Returns false for an invalid command, which produces no output.
+     */
+    public boolean handleCommand(int command, CommandSource reader) {
+        switch (command) {
+            case CommandReader.DRAW_CARD: handleDrawCard(reader.internName(names), reader.arg(0), reader.arg(1)); return true;
+            case CommandReader.BATTLE: handleBattle(reader.arg(0), reader.arg(1), reader.arg(2)); return true;
+            case CommandReader.STEAL_CARD: handleStealCard(reader.arg(0), reader.arg(1)); return true;
+            case CommandReader.DECK_COUNT: handleDeckCount(); return true;
+            case CommandReader.FIND_WINNING: handleFindWinning(); return true;
+            case CommandReader.DISCARD_PILE_COUNT: handleDiscardPileCount(); return true;
+            case CommandReader.COUNT_RANGE: handleCountRange(reader.arg(0), reader.arg(1), reader.arg(2), reader.arg(3)); return true;
+            case CommandReader.KTH_STRONGEST_ATTACK: handleKthStrongest(false, reader.arg(0)); return true;
+            case CommandReader.KTH_STRONGEST_HEALTH: handleKthStrongest(true, reader.arg(0)); return true;
+            case CommandReader.HISTOGRAM_ATTACK: handleHistogram(false, reader.arg(0)); return true;
+            case CommandReader.HISTOGRAM_HEALTH: handleHistogram(true, reader.arg(0)); return true;
+            default: return false;
+        }
+    }
+
     /**
      * Handle drawing a new card into the deck.
      * Creates a Card, assigns it an order, and inserts it.
+     * The name is interned in getNames(); cards only keep its id.
      */
-    public String handleDrawCard(String name, int att, int hp) {
-        Card newCard = new Card(name, att, hp, this.entryCounter);
+    public void handleDrawCard(String name, int att, int hp) {
+        handleDrawCard(names.intern(name), att, hp);
+    }
+
+    // Same, for a name already interned in getNames()
+    public void handleDrawCard(int nameId, int att, int hp) {
+        Card newCard = new Card(nameId, att, hp, this.entryCounter);
         this.entryCounter++;
-        deck.insert(newCard);
-        return "Added " + name + " to the deck\n";
+        if (bulkDraws) {
+            if (pendingCount == pendingDraws.length) {
+                Card[] grown = new Card[pendingCount * 2];
+                System.arraycopy(pendingDraws, 0, grown, 0, pendingCount);
+                pendingDraws = grown;
+            }
+            pendingDraws[pendingCount++] = newCard;
+        } else {
+            deck.insert(newCard);
+        }
+        out.append(ADDED).append(names.bytes(nameId)).append(TO_DECK);
     }
 
     /**
      * Handle deck count query.
-     * Ensures internal consistency (verifyCount) and returns current size.
+     * Reports the stored card count in O(1); verifyCount only does work
+     * when an integrity check level was enabled for this run.
      */
-    public String handleDeckCount() {
+    public void handleDeckCount() {
+        flushDraws();
         deck.verifyCount();
         int count = deck.getCardCount();
-        return "Number of cards in the deck: " + count + "\n";
+        out.append(DECK_COUNT).appendInt(count).append(NEWLINE);
+    }
+
+    /**
+     * Handle discard pile count query.
+     */
+    public void handleDiscardPileCount() {
+        out.append(DISCARD_PILE_COUNT).appendInt(discardPile.size()).append(NEWLINE);
+    }
+
+    /**
+     * Handle count_range: cards with a1 <= A_cur <= a2 and h1 <= H_cur <= h2.
+     */
+    public void handleCountRange(int a1, int a2, int h1, int h2) {
+        flushDraws();
+        out.append(IN_RANGE).appendInt(deck.countRange(a1, a2, h1, h2)).append(NEWLINE);
+    }
+
+    /**
+     * Handle kth_strongest_attack / kth_strongest_health: the k-th card from
+     * the top when ranked by (A_cur, H_cur, order) or (H_cur, A_cur, order).
+     */
+    public void handleKthStrongest(boolean byHealth, int k) {
+        flushDraws();
+        Card c = byHealth ? deck.kthByHealth(k) : deck.kthByAttack(k);
+        out.append(RANK).appendInt(k).append(byHealth ? BY_HEALTH : BY_ATTACK);
+        if (c == null) {
+            out.append(NO_CARD);
+        } else {
+            out.append(names.bytes(c.getNameId())).append(ATTACK_IS).appendInt(c.getACur())
+                    .append(HEALTH_IS).appendInt(c.getHCur()).append(NEWLINE);
+        }
+    }
+
+    /**
+     * Handle histogram_attack / histogram_health: one "lo-hi: count" line per
+     * non-empty bucket of the given width (buckets start at multiples of it).
+     * Empty buckets are jumped over, so the cost follows the buckets printed.
+     */
+    public void handleHistogram(boolean byHealth, int width) {
+        flushDraws();
+        width = Math.max(1, width);
+        out.append(byHealth ? HEALTH_HISTOGRAM : ATTACK_HISTOGRAM).appendInt(width).append(NEWLINE);
+        long v = byHealth ? deck.ceilingHealth(Integer.MIN_VALUE) : deck.ceilingAttack(Integer.MIN_VALUE);
+        while (v != DeckIndex.NO_VALUE) {
+            // the first and last buckets are cut to the int range
+            int lo = (int) Math.max(Integer.MIN_VALUE, Math.floorDiv(v, width) * width);
+            int hi = (int) Math.min(Integer.MAX_VALUE, Math.floorDiv(v, width) * width + width - 1);
+            int count = byHealth ? deck.countRange(Integer.MIN_VALUE, Integer.MAX_VALUE, lo, hi)
+                                 : deck.countRange(lo, hi, Integer.MIN_VALUE, Integer.MAX_VALUE);
+            out.appendInt(lo).append(DASH).appendInt(hi).append(COLON).appendInt(count).append(NEWLINE);
+            if (hi == Integer.MAX_VALUE) break;
+            v = byHealth ? deck.ceilingHealth(hi + 1) : deck.ceilingAttack(hi + 1);
+        }
     }
 
     /**
      * Return the winning side at the end of the game
      * (Survivor wins ties).
      */
-    public String handleFindWinning() {
+    public void handleFindWinning() {
         if (this.survivorPoints >= this.strangerPoints) {
-            return "The Survivor, Score: " + this.survivorPoints + "\n";
+            out.append(SURVIVOR_SCORE).appendInt(this.survivorPoints).append(NEWLINE);
         } else {
-            return "The Stranger, Score: " + this.strangerPoints + "\n";
+            out.append(STRANGER_SCORE).appendInt(this.strangerPoints).append(NEWLINE);
         }
     }
 
     /**
      * Handle stealing a card:
      * Find candidate with A_cur > attackLimit and H_cur > healthLimit.
-     * If found, remove it from deck and report; else return "No card".
+     * If found, remove it from deck and report; else report "No card".
      */
-    public String handleStealCard(int attackLimit, int healthLimit) {
-        Card stolenCard = deck.findBestStealCandidate(attackLimit, healthLimit);
+    public void handleStealCard(int attackLimit, int healthLimit) {
+        flushDraws();
+        Card stolenCard = steal(attackLimit, healthLimit);
 
         if (stolenCard == null) {
-            return "No card to steal\n";
+            out.append(NO_STEAL);
         } else {
-            deck.delete(stolenCard);
-            return "The Stranger stole the card: " + stolenCard.getName() + "\n";
+            out.append(STOLE).append(names.bytes(stolenCard.getNameId())).append(NEWLINE);
         }
     }
 
@@ -65,83 +280,151 @@ public class GameManager {
      * Handle a battle between Stranger and Survivor's optimal card.
      * Determines priority class (1–4), resolves damage, updates scores,
      * and reinserts or discards the played card depending on survival.
+     * Afterwards the heal pool revives discarded cards (see reviveCards).
      */
-    public String handleBattle(int strangerAttack, int strangerHealth, int healPoolAmount) {
-        Card playedCard = deck.findOptimalBattleCard(strangerAttack, strangerHealth);
+    public void handleBattle(int strangerAttack, int strangerHealth, int healPoolAmount) {
+        flushDraws();
+        Card playedCard = battle(strangerAttack, strangerHealth, healPoolAmount);
 
         if (playedCard == null) {
-            updateScores("Stranger", 2);
-            return "No cards to play, 0 cards revived\n";
+            out.append(NO_CARDS).appendInt(lastRevived).append(REVIVED);
+            return;
         }
+        out.append(FOUND_PRIORITY).appendInt(lastPriority).append(SURVIVOR_PLAYS).append(names.bytes(playedCard.getNameId()));
+        out.append(lastDiscarded ? DISCARDED : RETURNED);
+        out.appendInt(lastRevived).append(REVIVED);
+    }
 
-        String cardName = playedCard.getName();
-
-        // Initial stats
-        int H_cur_initial = playedCard.getHCur();
-        int A_cur_initial = playedCard.getACur();
-        int H_base = playedCard.getHBase();
-        int A_base = playedCard.getABase();
-
-        // Determine battle priority (survive/kill conditions)
-        boolean survives_initial = H_cur_initial > strangerAttack;
-        boolean kills_initial = A_cur_initial >= strangerHealth;
-        int priority = 0;
-        if (survives_initial && kills_initial) priority = 1;
-        else if (survives_initial) priority = 2;
-        else if (kills_initial) priority = 3;
-        else priority = 4;
-
-        // Apply damage
-        int H_cur_final = H_cur_initial - strangerAttack;
-        int H_stranger_final = strangerHealth - A_cur_initial;
-
-        int survivorScore = 0;
-        int strangerScore = 0;
-
-        // Survivor card damage results
-        if (H_cur_final <= 0) {
-            strangerScore += 2; // card dies
-        } else if (H_cur_final < H_base) {
-            strangerScore += 1; // card damaged but survives
+    /**
+     * What-if play: run the given Stranger turns against the current game
+     * and report what each would do, then take them all back. Nothing is
+     * written to the responses; afterwards the deck, the discard pile, the
+     * card stats, the scores and the order counter are as they were.
+     *
+     * The turns run on the live structures with every change logged (see
+     * UndoLog), so undoing costs O(changes), not a copy of the deck. On the
+     * persistent engine they run on a fork instead (PersistentDeck.fork), so
+     * its published versions keep their shape and keys. The Card objects are
+     * shared, though, and their stats and order are changed in place until
+     * the rollback, so lookahead must not run while other threads read cards
+     * (including cards reached through PersistentDeck.current()).
+     * A random survivor strategy still advances its generator.
+     */
+    public Lookahead.Step[] lookahead(Lookahead.Turn... turns) {
+        flushDraws();
+        int savedSurvivor = survivorPoints, savedStranger = strangerPoints, savedCounter = entryCounter;
+        DeckIndex live = deck;
+        if (deck instanceof PersistentDeck) deck = ((PersistentDeck) deck).fork();
+        undo = new UndoLog();
+        Lookahead.Step[] steps = new Lookahead.Step[turns.length];
+        try {
+            for (int i = 0; i < turns.length; i++) {
+                Lookahead.Turn t = turns[i];
+                if (t.command == CommandReader.STEAL_CARD) {
+                    Card c = steal(t.a, t.b);
+                    steps[i] = new Lookahead.Step(t.command, c, c == null ? 0 : c.getACur(),
+                            c == null ? 0 : c.getHCur(), 0, 0, 0, false, 0);
+                } else {
+                    Card c = battle(t.a, t.b, t.heal);
+                    steps[i] = new Lookahead.Step(t.command, c, lastAttack, lastHealth, lastPriority,
+                            lastSurvivorDelta, lastStrangerDelta, lastDiscarded, lastRevived);
+                }
+            }
+        } finally {
+            undo.rollback(deck == live ? deck : null, discardPile);
+            undo = null;
+            deck = live;
+            survivorPoints = savedSurvivor;
+            strangerPoints = savedStranger;
+            entryCounter = savedCounter;
         }
+        return steps;
+    }
 
-        // Stranger damage results
-        if (H_stranger_final <= 0) {
-            survivorScore += 2; // stranger defeated
-        } else if (H_stranger_final < strangerHealth) {
-            survivorScore += 1; // stranger damaged but survives
+    // Remove the best steal candidate from the deck, without a response
+    private Card steal(int attackLimit, int healthLimit) {
+        Card stolenCard = deck.findBestStealCandidate(attackLimit, healthLimit);
+        if (stolenCard != null) {
+            if (undo != null) undo.record(UndoLog.DELETED, stolenCard);
+            deck.delete(stolenCard);
         }
+        return stolenCard;
+    }
 
-        // Update global scores
-        updateScores("Survivor", survivorScore);
-        updateScores("Stranger", strangerScore);
+    /**
+     * Play one battle without a response: pick the card, score, discard or
+     * return it, then revive. Returns the played card (null if the deck was
+     * empty) and leaves the outcome in the last* fields.
+     */
+    private Card battle(int strangerAttack, int strangerHealth, int healPoolAmount) {
+        Card playedCard = strategy == null ? deck.findOptimalBattleCard(strangerAttack, strangerHealth)
+                                           : strategy.choose(deck, strangerAttack, strangerHealth);
+
+        if (playedCard == null) {
+            lastAttack = lastHealth = lastPriority = lastSurvivorDelta = 0;
+            lastStrangerDelta = 2;
+            lastDiscarded = false;
+            updateScores("Stranger", 2);
+            lastRevived = reviveCards(healPoolAmount);
+            return null;
+        }
 
-        String outputMessage;
+        int H_cur = playedCard.getHCur();
+        int A_cur = playedCard.getACur();
+        int H_base = playedCard.getHBase();
+        lastAttack = A_cur;
+        lastHealth = H_cur;
+        lastPriority = BattleRules.priorityClass(A_cur, H_cur, strangerAttack, strangerHealth);
+        lastSurvivorDelta = BattleRules.survivorPoints(A_cur, strangerHealth);
+        lastStrangerDelta = BattleRules.strangerPoints(H_cur, H_base, strangerAttack);
+        updateScores("Survivor", lastSurvivorDelta);
+        updateScores("Stranger", lastStrangerDelta);
 
-        if (H_cur_final <= 0) {
-            // Card is discarded (dies)
+        int H_cur_final = H_cur - strangerAttack;
+        lastDiscarded = H_cur_final <= 0;
+        if (lastDiscarded) {
+            // Card is discarded (dies) and waits in the discard pile for revival
+            if (undo != null) undo.record(UndoLog.DELETED, playedCard);
             deck.delete(playedCard);
-            outputMessage = String.format(
-                    "Found with priority %d, Survivor plays %s, the played card is discarded, 0 cards revived\n",
-                    priority, cardName);
+            if (undo != null) undo.record(UndoLog.PILE_ADDED, playedCard);
+            discardPile.add(playedCard);
         } else {
-            // Card survives: update stats and reinsert with new order
-            deck.delete(playedCard);
-            playedCard.setHCur(H_cur_final);
-
-            long prod = (long) playedCard.getABase() * playedCard.getHCur();
-            int newACur = (int) (prod / playedCard.getHBase());
-            playedCard.setACur(Math.max(1, newACur));
-
-            playedCard.setOrder(++this.entryCounter);
-            deck.insert(playedCard);
-
-            outputMessage = String.format(
-                    "Found with priority %d, Survivor plays %s, the played card returned to deck, 0 cards revived\n",
-                    priority, cardName);
+            // Card survives: update stats and re-seat it with new order.
+            // The returned card takes a fresh order; step past it so the next draw
+            // does not get the same one (equal keys make deletes hit the wrong node)
+            int order = ++this.entryCounter;
+            this.entryCounter++;
+            if (undo != null) undo.record(UndoLog.MOVED, playedCard);
+            deck.reposition(playedCard, BattleRules.returnedAttack(playedCard.getABase(), H_base, H_cur_final),
+                    H_cur_final, order);
         }
+        lastRevived = reviveCards(healPoolAmount);
+        return playedCard;
+    }
 
-        return outputMessage;
+    /**
+     * Type-2 revival: spend the heal pool on the discard pile. Each revived
+     * card gets its full H_base back and costs that much of the pool; the
+     * cheapest cards go first (earliest order on ties) until the next one no
+     * longer fits. A revived card loses 10% of its base attack (at least 1
+     * remains) and rejoins the deck with a fresh order. Returns the number
+     * of cards revived.
+     */
+    private int reviveCards(int healPoolAmount) {
+        if (healPoolAmount <= 0) return 0;
+        int count = discardPile.countAffordable(healPoolAmount);
+        for (int i = 0; i < count; i++) {
+            Card c = discardPile.removeCheapest();
+            if (undo != null) undo.record(UndoLog.PILE_REMOVED, c);
+            int aBase = BattleRules.revivedAttack(c.getABase());
+            c.setABase(aBase);
+            c.setACur(aBase);
+            c.setHCur(c.getHBase());
+            c.setOrder(this.entryCounter++);
+            if (undo != null) undo.record(UndoLog.INSERTED, c);
+            deck.insert(c);
+        }
+        return count;
     }
 
     // Internal helper: add points to Survivor or Stranger
@@ -0,0 +1,176 @@
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Daemon mode: a warm JVM that plays many games over local TCP connections,
+ * so short inputs stop paying JVM startup and JIT warm-up on every run.
+ *
+ *   java GameServer [port]          (default port 7250, bound to 127.0.0.1)
+ *   cat input.txt | nc -q 1 127.0.0.1 7250 > output.txt
+ *
+ * Every connection is one session with its own GameManager. The client
+ * streams commands in the input file format and may pipeline as many as it
+ * likes; responses are collected in the session's ResponseSink and written
+ * back in batches: whenever the sink passes its flush threshold, and
+ * whenever the reader has no more buffered input (the next command would
+ * block), so a client waiting for an answer always gets it. The session
+ * ends when the client closes its side; an unknown command is answered
+ * with "Invalid command: X" and ends the session.
+ *
+ * Uses the same -Dnightpass.engine / -Dnightpass.check / -Dnightpass.bulkdraw
+ * properties as Main; -Dnightpass.server.threads caps concurrent sessions
+ * (default: number of processors).
+ *
+ * Hosted mode (-Dnightpass.host.dir=DIR): games outlive connections and are
+ * kept in a GameHost. The first line of a connection is a game id, and the
+ * commands that follow go to that game; any number of connections may
+ * address the same game. -Dnightpass.host.games bounds the games kept in
+ * memory (default 1024) and -Dnightpass.host.idle evicts games idle for
+ * that many milliseconds (default 60000, 0 = never); evicted games wait in
+ * DIR. On shutdown the host spills every game and prints per-game stats.
+ */
+public class GameServer {
+    private static final int DEFAULT_PORT = 7250;
+    private static final byte[] INVALID = ResponseSink.fragment("Invalid command: ");
+
+    private final String engine;
+    private final int cacheEntries = Integer.getInteger("nightpass.cache", 0);
+    private final int checkLevel;
+    private final boolean bulkDraws;
+    private GameHost host; // hosted mode, null otherwise
+
+    public GameServer(String engine, int checkLevel, boolean bulkDraws) {
+        DeckIndex.create(engine); // fail fast on an unknown engine
+        this.engine = engine;
+        this.checkLevel = checkLevel;
+        this.bulkDraws = bulkDraws;
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        int threads = Integer.getInteger("nightpass.server.threads", Runtime.getRuntime().availableProcessors());
+        GameServer server;
+        try {
+            server = new GameServer(System.getProperty("nightpass.engine", "nested"),
+                    Deck.parseCheckLevel(System.getProperty("nightpass.check")),
+                    !"false".equals(System.getProperty("nightpass.bulkdraw")));
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            return;
+        }
+        String hostDir = System.getProperty("nightpass.host.dir");
+        if (hostDir != null) {
+            GameHost host = new GameHost(Paths.get(hostDir), server.engine, server.cacheEntries, server.checkLevel,
+                    server.bulkDraws, Integer.getInteger("nightpass.host.games", 1024),
+                    Long.getLong("nightpass.host.idle", 60000L));
+            server.setHost(host);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    host.close();
+                } catch (IOException e) {
+                    System.out.println("Spilling games failed: " + e.getMessage());
+                }
+                host.printStats(System.out);
+            }));
+        }
+        server.serve(port, threads);
+    }
+
+    // Route sessions to the games of host instead of a new game per connection
+    public void setHost(GameHost host) {
+        this.host = host;
+    }
+
+    // Accept connections until the process is stopped
+    public void serve(int port, int threads) throws IOException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try (ServerSocket listener = new ServerSocket()) {
+            listener.setReuseAddress(true);
+            listener.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+            System.out.println("Nightpass server listening on " + listener.getLocalSocketAddress()
+                    + " (engine " + engine + ", " + threads + " threads)");
+            while (true) {
+                Socket socket = listener.accept();
+                pool.execute(() -> {
+                    if (host == null) session(socket);
+                    else hostedSession(socket);
+                });
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private void session(Socket socket) {
+        try (Socket s = socket) {
+            s.setTcpNoDelay(true);
+            InputStream in = s.getInputStream();
+            ResponseSink out = new ResponseSink(s.getOutputStream());
+            CommandReader reader = new CommandReader(in);
+            GameManager game = new GameManager(out, DeckIndex.create(engine, cacheEntries));
+            game.setCheckLevel(checkLevel);
+            game.setBulkDraws(bulkDraws);
+
+            int command;
+            while ((command = reader.next()) != CommandReader.EOF) {
+                if (!game.handleCommand(command, reader)) {
+                    out.append(INVALID).appendString(reader.token()).append((byte) '\n');
+                    break;
+                }
+                out.endCommand();
+                // Nothing more pipelined: answer before blocking on the socket
+                if (!reader.hasBufferedInput() && in.available() == 0) out.flush();
+            }
+            out.flush();
+            s.shutdownOutput();
+        } catch (IOException e) {
+            // client went away; nothing to answer
+        }
+    }
+
+    // Hosted mode: the first line names the game, the rest are its commands
+    private void hostedSession(Socket socket) {
+        try (Socket s = socket) {
+            s.setTcpNoDelay(true);
+            InputStream in = s.getInputStream();
+            String gameId = readLine(in);
+            if (gameId.isEmpty()) return;
+            OutputStream out = new BufferedOutputStream(s.getOutputStream(), 1 << 16);
+            CommandReader reader = new CommandReader(in);
+
+            int command;
+            while ((command = reader.next()) != CommandReader.EOF) {
+                if (!host.handle(gameId, command, reader, out)) {
+                    out.write(INVALID);
+                    out.write(reader.token().getBytes(StandardCharsets.UTF_8));
+                    out.write('\n');
+                    break;
+                }
+                if (!reader.hasBufferedInput() && in.available() == 0) out.flush();
+            }
+            out.flush();
+            s.shutdownOutput();
+        } catch (IOException e) {
+            // client went away; nothing to answer
+        }
+    }
+
+    // One line of raw bytes, read before the CommandReader takes over the stream
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != -1 && b != '\n') line.write(b);
+        return new String(line.toByteArray(), StandardCharsets.UTF_8).trim();
+    }
+}
@@ -0,0 +1,179 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Compact binary checkpoint of everything a GameManager holds, written and
+ * read through NIO channels.
+ *
+ * Layout (big-endian):
+ *   int magic "NPSN", int version
+ *   long commandsApplied, long outputBytes   (where the run was when saved)
+ *   int survivorPoints, strangerPoints, entryCounter, cardCount
+ *   cardCount x card
+ *   int discardCount, discardCount x card                (version 2 and up)
+ * card = { int nameLength, name bytes (UTF-8),
+ *          int A_init, H_init, A_base, H_base, A_cur, H_cur, order }
+ *
+ * Deck cards are written in (A_cur, H_cur, order) order and the discard
+ * pile in its own key order, so a restore hands both runs straight to
+ * loadSorted and the trees are built bottom-up in linear time instead of
+ * one insert per card. Names are stored as bytes, not NameTable ids, and
+ * are interned into the restoring game's table by applyTo.
+ */
+public class GameSnapshot {
+    private static final int MAGIC = 0x4E50534E; // "NPSN"
+    private static final int VERSION = 2;
+    private static final int BUFFER = 1 << 20;
+    private static final int CARD_INTS = 7;
+
+    public final long commandsApplied;
+    public final long outputBytes;
+    private final int survivorPoints, strangerPoints, entryCounter;
+    private final Card[] cards, discarded;
+    private final NameTable names; // the cards' name ids point here until applyTo
+
+    private GameSnapshot(long commandsApplied, long outputBytes, int survivorPoints,
+                         int strangerPoints, int entryCounter, Card[] cards, Card[] discarded, NameTable names) {
+        this.commandsApplied = commandsApplied;
+        this.outputBytes = outputBytes;
+        this.survivorPoints = survivorPoints;
+        this.strangerPoints = strangerPoints;
+        this.entryCounter = entryCounter;
+        this.cards = cards;
+        this.discarded = discarded;
+        this.names = names;
+    }
+
+    public int getCardCount() { return cards.length; }
+
+    // Load this snapshot into a freshly created GameManager
+    public void applyTo(GameManager game) {
+        NameTable target = game.getNames();
+        for (Card c : cards) reintern(c, target);
+        for (Card c : discarded) reintern(c, target);
+        game.restoreState(survivorPoints, strangerPoints, entryCounter,
+                cards, cards.length, discarded, discarded.length);
+    }
+
+    /**
+     * Write the state of game to file. The snapshot goes to a temporary file
+     * first and is moved into place, so a crash never leaves a torn file.
+     */
+    public static void write(Path file, GameManager game, long commandsApplied, long outputBytes) throws IOException {
+        DeckIndex deck = game.getDeck();
+        Card[] sorted = new Card[deck.getCardCount()];
+        deck.copyInOrder(sorted);
+        DiscardPile pile = game.getDiscardPile();
+        Card[] discarded = new Card[pile.size()];
+        pile.copyInOrder(discarded);
+
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buf = ByteBuffer.allocateDirect(BUFFER);
+            buf.putInt(MAGIC).putInt(VERSION);
+            buf.putLong(commandsApplied).putLong(outputBytes);
+            buf.putInt(game.getSurvivorPoints()).putInt(game.getStrangerPoints());
+            buf.putInt(game.getEntryCounter()).putInt(sorted.length);
+            NameTable names = game.getNames();
+            for (Card c : sorted) putCard(ch, buf, c, names);
+            if (buf.remaining() < 4) drain(ch, buf);
+            buf.putInt(discarded.length);
+            for (Card c : discarded) putCard(ch, buf, c, names);
+            drain(ch, buf);
+            ch.force(true);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public static GameSnapshot read(Path file) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buf = ByteBuffer.allocateDirect(BUFFER);
+            buf.flip();
+            need(ch, buf, 40);
+            if (buf.getInt() != MAGIC) throw new IOException("Not a Nightpass snapshot: " + file);
+            int version = buf.getInt();
+            if (version < 1 || version > VERSION) throw new IOException("Unsupported snapshot version " + version);
+            long commandsApplied = buf.getLong();
+            long outputBytes = buf.getLong();
+            int survivor = buf.getInt(), stranger = buf.getInt(), entry = buf.getInt();
+            int n = buf.getInt();
+
+            NameTable names = new NameTable();
+            Card[] cards = readCards(ch, buf, n, names);
+            Card[] discarded = new Card[0];
+            if (version >= 2) {
+                need(ch, buf, 4);
+                discarded = readCards(ch, buf, buf.getInt(), names);
+            }
+            return new GameSnapshot(commandsApplied, outputBytes, survivor, stranger, entry, cards, discarded, names);
+        }
+    }
+
+    private void reintern(Card c, NameTable target) {
+        byte[] name = names.bytes(c.getNameId());
+        c.setNameId(target.intern(name, 0, name.length));
+    }
+
+    private static void putCard(FileChannel ch, ByteBuffer buf, Card c, NameTable names) throws IOException {
+        byte[] name = names.bytes(c.getNameId());
+        if (buf.remaining() < 4 + name.length + 4 * CARD_INTS) drain(ch, buf);
+        if (buf.remaining() < 4 + name.length + 4 * CARD_INTS)
+            throw new IOException("Card name too long: " + names.name(c.getNameId()));
+        buf.putInt(name.length).put(name);
+        buf.putInt(c.getAInit()).putInt(c.getHInit())
+                .putInt(c.getABase()).putInt(c.getHBase())
+                .putInt(c.getACur()).putInt(c.getHCur())
+                .putInt(c.getOrder());
+    }
+
+    private static Card[] readCards(FileChannel ch, ByteBuffer buf, int n, NameTable names) throws IOException {
+        Card[] cards = new Card[n];
+        byte[] name = new byte[64];
+        for (int i = 0; i < n; i++) {
+            need(ch, buf, 4);
+            int len = buf.getInt();
+            if (len > name.length) name = new byte[Math.max(len, name.length * 2)];
+            need(ch, buf, len + 4 * CARD_INTS);
+            buf.get(name, 0, len);
+            int aInit = buf.getInt(), hInit = buf.getInt();
+            Card c = new Card(names.intern(name, 0, len), aInit, hInit, 0);
+            c.setABase(buf.getInt());
+            c.setHBase(buf.getInt());
+            c.setACur(buf.getInt());
+            c.setHCur(buf.getInt());
+            c.setOrder(buf.getInt());
+            cards[i] = c;
+        }
+        return cards;
+    }
+
+    // Cut the output file back to the bytes a snapshot accounted for, so a resumed run can append
+    public static void truncateOutput(Path file, long bytes) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            if (ch.size() < bytes) throw new IOException("Output file is shorter than the snapshot expects: " + file);
+            ch.truncate(bytes);
+        }
+    }
+
+    private static void drain(FileChannel ch, ByteBuffer buf) throws IOException {
+        buf.flip();
+        while (buf.hasRemaining()) ch.write(buf);
+        buf.clear();
+    }
+
+    // Make sure at least n bytes are readable (buf is in read mode)
+    private static void need(FileChannel ch, ByteBuffer buf, int n) throws IOException {
+        if (buf.remaining() >= n) return;
+        buf.compact();
+        while (buf.position() < n) {
+            if (ch.read(buf) < 0) throw new IOException("Truncated snapshot");
+        }
+        buf.flip();
+    }
+}
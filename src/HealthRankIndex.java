@@ -0,0 +1,175 @@
+/**
+ * Order-statistics AVL over (H_cur, A_cur, order) with subtree sizes, used by
+ * the deck engines for the health-ranked analytics queries.
+ *
+ * Every engine is attack-major, so "k-th strongest by health" or "how many
+ * cards have health in [lo, hi]" would have to visit every attack band (or
+ * every node, in FlatDeck). An engine only builds this index the first time
+ * such a query comes in (see of()) and from then on keeps it in step with
+ * every insert, delete and reposition, so runs that never ask pay nothing.
+ *
+ * Keys are copied into the nodes (a card's stats only change while it is
+ * out of the index).
+ */
+public class HealthRankIndex {
+    private static final class Node {
+        Card card;
+        int h, a, ord;      // key
+        Node left, right;
+        int height, size;
+
+        Node(Card c) {
+            this.card = c;
+            this.h = c.getHCur();
+            this.a = c.getACur();
+            this.ord = c.getOrder();
+            this.height = 1;
+            this.size = 1;
+        }
+    }
+
+    private Node root;
+
+    // Index of the cards in a deck: a health-sorted copy built into a balanced tree, O(n log n)
+    public static HealthRankIndex of(DeckIndex deck) {
+        int n = deck.getCardCount();
+        Card[] all = new Card[n];
+        deck.copyInOrder(all);
+        DeckIndex.sortByHealthKey(all, n);
+        HealthRankIndex index = new HealthRankIndex();
+        index.root = build(all, 0, n - 1);
+        return index;
+    }
+
+    private static Node build(Card[] cards, int lo, int hi) {
+        if (lo > hi) return null;
+        int mid = (lo + hi) >>> 1;
+        Node n = new Node(cards[mid]);
+        n.left = build(cards, lo, mid - 1);
+        n.right = build(cards, mid + 1, hi);
+        upd(n);
+        return n;
+    }
+
+    public int size() { return size(root); }
+
+    public void insert(Card c) {
+        root = insert(root, new Node(c));
+    }
+
+    // Remove a card by its current (H_cur, A_cur, order)
+    public void delete(Card c) {
+        root = delete(root, c.getHCur(), c.getACur(), c.getOrder());
+    }
+
+    // Number of cards with lo <= H_cur <= hi
+    public int count(int lo, int hi) {
+        if (lo > hi) return 0;
+        return countBelow(hi, true) - countBelow(lo, false);
+    }
+
+    // k-th card (1-based) from the top of (H_cur, A_cur, order) order, null if out of range
+    public Card kthFromTop(int k) {
+        if (k < 1 || k > size(root)) return null;
+        int i = size(root) - k; // 0-based rank from the bottom
+        Node n = root;
+        while (true) {
+            int ls = size(n.left);
+            if (i < ls) n = n.left;
+            else if (i == ls) return n.card;
+            else { i -= ls + 1; n = n.right; }
+        }
+    }
+
+    // Smallest H_cur >= h, DeckIndex.NO_VALUE if there is none
+    public long ceiling(int h) {
+        long ans = DeckIndex.NO_VALUE;
+        Node n = root;
+        while (n != null) {
+            if (n.h >= h) { ans = n.h; n = n.left; }
+            else n = n.right;
+        }
+        return ans;
+    }
+
+    // Cards with H_cur < h (or <= h when inclusive)
+    private int countBelow(int h, boolean inclusive) {
+        int count = 0;
+        Node n = root;
+        while (n != null) {
+            if (n.h < h || (inclusive && n.h == h)) { count += size(n.left) + 1; n = n.right; }
+            else n = n.left;
+        }
+        return count;
+    }
+
+    // -------- AVL plumbing --------
+    private static int ht(Node n){ return n==null?0:n.height; }
+    private static int size(Node n){ return n==null?0:n.size; }
+
+    private static void upd(Node n){
+        n.height = 1 + Math.max(ht(n.left), ht(n.right));
+        n.size = 1 + size(n.left) + size(n.right);
+    }
+
+    // Order by (H, A, order)
+    private static int cmp(int h, int a, int ord, Node n){
+        if (h != n.h) return h < n.h ? -1 : 1;
+        if (a != n.a) return a < n.a ? -1 : 1;
+        return Integer.compare(ord, n.ord);
+    }
+
+    private static Node rotRight(Node y){
+        Node x = y.left, t2 = x.right;
+        x.right = y; y.left = t2;
+        upd(y); upd(x);
+        return x;
+    }
+
+    private static Node rotLeft(Node x){
+        Node y = x.right, t2 = y.left;
+        y.left = x; x.right = t2;
+        upd(x); upd(y);
+        return y;
+    }
+
+    private static int bf(Node n){ return n==null?0:ht(n.left)-ht(n.right); }
+
+    private static Node bal(Node n){
+        int b = bf(n);
+        if (b > 1){
+            if (bf(n.left) < 0) n.left = rotLeft(n.left);
+            return rotRight(n);
+        }
+        if (b < -1){
+            if (bf(n.right) > 0) n.right = rotRight(n.right);
+            return rotLeft(n);
+        }
+        return n;
+    }
+
+    private static Node insert(Node n, Node leaf){
+        if (n==null) return leaf;
+        if (cmp(leaf.h, leaf.a, leaf.ord, n) < 0) n.left = insert(n.left, leaf);
+        else                                        n.right = insert(n.right, leaf);
+        upd(n);
+        return bal(n);
+    }
+
+    private static Node delete(Node n, int h, int a, int ord){
+        if (n==null) return null;
+        int c = cmp(h, a, ord, n);
+        if (c < 0) n.left = delete(n.left, h, a, ord);
+        else if (c > 0) n.right = delete(n.right, h, a, ord);
+        else {
+            if (n.left==null) return n.right;
+            if (n.right==null) return n.left;
+            Node succ = n.right;
+            while (succ.left != null) succ = succ.left;
+            n.card = succ.card; n.h = succ.h; n.a = succ.a; n.ord = succ.ord;
+            n.right = delete(n.right, succ.h, succ.a, succ.ord);
+        }
+        upd(n);
+        return bal(n);
+    }
+}
@@ -0,0 +1,76 @@
+import java.io.PrintStream;
+
+/**
+ * Log-linear latency histogram in the style of HdrHistogram.
+ *
+ * Values below 32 get their own bucket; above that every power of two is
+ * split into 16 equal sub-buckets, so any recorded value is reported with
+ * at most ~6% relative error while the whole range of a long fits in one
+ * fixed array. Recording is a couple of shifts and an array increment.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BITS = 5;              // 32 linear values, then 16 per octave
+    private static final int HALF = 1 << (SUB_BITS - 1);
+
+    private final long[] counts = new long[64 * HALF];
+    private long total;
+    private long sum;
+    private long max;
+
+    public void record(long value) {
+        if (value < 0) value = 0;
+        counts[index(value)]++;
+        total++;
+        sum += value;
+        if (value > max) max = value;
+    }
+
+    // Add all values recorded in other (e.g. per-thread histograms)
+    public void merge(LatencyHistogram other) {
+        for (int i = 0; i < counts.length; i++) counts[i] += other.counts[i];
+        total += other.total;
+        sum += other.sum;
+        if (other.max > max) max = other.max;
+    }
+
+    public long getCount() { return total; }
+    public long getMax() { return max; }
+    public double getMean() { return total == 0 ? 0 : (double) sum / total; }
+
+    // Smallest recorded bucket bound such that fraction p of the values are <= it
+    public long getValueAtPercentile(double p) {
+        if (total == 0) return 0;
+        long target = (long) Math.ceil(p / 100.0 * total);
+        if (target < 1) target = 1;
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= target) return Math.min(max, highestInBucket(i));
+        }
+        return max;
+    }
+
+    public void printRow(PrintStream out, String label) {
+        out.printf("%-14s %10d %10.0f %10d %10d %10d %10d %10d%n", label, total, getMean(),
+                getValueAtPercentile(50), getValueAtPercentile(90), getValueAtPercentile(99),
+                getValueAtPercentile(99.9), max);
+    }
+
+    public static void printHeader(PrintStream out) {
+        out.printf("%-14s %10s %10s %10s %10s %10s %10s %10s%n",
+                "command", "count", "mean(ns)", "p50", "p90", "p99", "p99.9", "max");
+    }
+
+    private static int index(long v) {
+        if (v < 2 * HALF) return (int) v;
+        int exp = 63 - Long.numberOfLeadingZeros(v) - (SUB_BITS - 1);
+        return exp * HALF + (int) (v >>> exp);
+    }
+
+    private static long highestInBucket(int idx) {
+        if (idx < 2 * HALF) return idx;
+        int exp = (idx / HALF) - 1;
+        long sub = idx - (long) exp * HALF;
+        return ((sub + 1) << exp) - 1;
+    }
+}
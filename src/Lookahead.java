@@ -0,0 +1,57 @@
+/**
+ * Turns and results of GameManager.lookahead: what a sequence of Stranger
+ * battles and steals would do to the current game, worked out without
+ * changing it.
+ */
+public final class Lookahead {
+    private Lookahead() { }
+
+    /** One Stranger turn to simulate: a battle or a steal (CommandReader codes). */
+    public static final class Turn {
+        final int command;
+        final int a, b, heal;
+
+        private Turn(int command, int a, int b, int heal) {
+            this.command = command;
+            this.a = a;
+            this.b = b;
+            this.heal = heal;
+        }
+
+        public static Turn battle(int strangerAttack, int strangerHealth, int healPoolAmount) {
+            return new Turn(CommandReader.BATTLE, strangerAttack, strangerHealth, healPoolAmount);
+        }
+
+        public static Turn steal(int attackLimit, int healthLimit) {
+            return new Turn(CommandReader.STEAL_CARD, attackLimit, healthLimit, 0);
+        }
+    }
+
+    /**
+     * What one turn would do. card is null when the deck had nothing to play
+     * or steal; attack and health are the card's stats when it was picked
+     * (the Card itself is live and shows the real game's stats). priority is
+     * 0 for steals and empty battles.
+     */
+    public static final class Step {
+        public final int command;
+        public final Card card;
+        public final int attack, health, priority;
+        public final int survivorPoints, strangerPoints; // score deltas of this turn
+        public final boolean discarded;                  // the played card died
+        public final int revived;                        // cards the heal pool brought back
+
+        Step(int command, Card card, int attack, int health, int priority,
+             int survivorPoints, int strangerPoints, boolean discarded, int revived) {
+            this.command = command;
+            this.card = card;
+            this.attack = attack;
+            this.health = health;
+            this.priority = priority;
+            this.survivorPoints = survivorPoints;
+            this.strangerPoints = strangerPoints;
+            this.discarded = discarded;
+            this.revived = revived;
+        }
+    }
+}
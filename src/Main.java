@@ -43,19 +43,17 @@
  *
  * REQUIREMENTS:
  * =============
- * - Java SDK 8+ (javac, java commands)
+ * - Java SDK 11+ (javac, java commands; JFR events need jdk.jfr)
  * - Python 3.6+ (for test runner)
  *
  * @author Nisanur Doğan 2023400186
  */
 
 import java.io.*;
-import java.util.Scanner;
-import java.util.ArrayList;
-import java.math.*;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 
 public class Main {
-    private static GameManager manager = new GameManager();
     public static void main(String[] args) {
         // Check command line arguments
         if (args.length != 2) {
@@ -68,112 +66,163 @@ public class Main {
         String outFile = args[1];
 
         // Initialize file reader
-        Scanner reader = null;
+        InputStream input = null;
         try {
-            reader = new Scanner(new File(inFile));
+            input = new FileInputStream(inFile);
         } catch (FileNotFoundException e) {
             System.out.println("Input file not found: " + inFile);
             e.printStackTrace();
             return;
         }
+        // Resume from a checkpoint (-Dnightpass.restore=file): the output is cut back
+        // to what the snapshot covered and the remaining responses are appended
+        String restoreFile = System.getProperty("nightpass.restore");
+        GameSnapshot snapshot = null;
+        if (restoreFile != null) {
+            try {
+                snapshot = GameSnapshot.read(Paths.get(restoreFile));
+                GameSnapshot.truncateOutput(Paths.get(outFile), snapshot.outputBytes);
+            } catch (IOException e) {
+                System.out.println("Restore error: " + e.getMessage());
+                closeQuietly(input);
+                return;
+            }
+        }
 
-        // Initialize file writer
-        FileWriter writer = null;
+        // Pipelined mode (-Dnightpass.pipeline=true): parsing and writing run on their
+        // own threads, connected to this one by ring buffers
+        boolean pipelined = Boolean.getBoolean("nightpass.pipeline");
+        AsyncOutputStream async = null;
+
+        // Initialize file writer; responses are buffered by the sink and written in blocks
+        ResponseSink writer = null;
         try {
-            writer = new FileWriter(outFile);
+            OutputStream file = new FileOutputStream(outFile, snapshot != null);
+            if (pipelined) file = async = new AsyncOutputStream(file);
+            writer = new ResponseSink(file);
         } catch (IOException e) {
             System.out.println("Writing error: " + outFile);
             e.printStackTrace();
-            if (reader != null)
-                reader.close();
+            closeQuietly(input);
+            return;
+        }
+        NameTable names = new NameTable();
+        GameManager manager;
+        long checkpointEvery;
+        try {
+            // Deck engine: -Dnightpass.engine=nested|pooled|flat (-Dnightpass.pool=true means pooled),
+            // optionally behind a pick cache of -Dnightpass.cache=N entries
+            String engine = System.getProperty("nightpass.engine",
+                    Boolean.getBoolean("nightpass.pool") ? "pooled" : "nested");
+            manager = new GameManager(writer, DeckIndex.create(engine, Integer.getInteger("nightpass.cache", 0)), names);
+            // Integrity checks are off unless requested, e.g. -Dnightpass.check=full
+            manager.setCheckLevel(Deck.parseCheckLevel(System.getProperty("nightpass.check")));
+            checkpointEvery = parseCheckpointEvery(System.getProperty("nightpass.checkpoint.every"));
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            closeQuietly(input);
+            closeQuietly(writer);
             return;
         }
 
-        // Process commands line by line
+        CommandSource reader = pipelined ? new CommandPipeline(input, names) : new CommandReader(input);
+
+        // Opt-in instrumentation (-Dnightpass.metrics=true), null when off
+        Metrics metrics = Metrics.fromSystemProperties();
+
+        // Periodic checkpoints: -Dnightpass.checkpoint=file [-Dnightpass.checkpoint.every=N]
+        String checkpointFile = System.getProperty("nightpass.checkpoint");
+        Path checkpointPath = checkpointFile == null ? null : Paths.get(checkpointFile);
+        long commandsApplied = 0, outputBase = 0;
+        // Binary journal of commands and response fingerprints: -Dnightpass.journal=file
+        String journalFile = System.getProperty("nightpass.journal");
+        CommandJournal journal = null;
+
+        // Process commands one by one, straight from the byte stream
         try {
-            while (reader.hasNext()) {
-                String line = reader.nextLine();
-                Scanner scanner = new Scanner(line);
-                String command = scanner.next();
-                String out = "";
+            if (snapshot != null) {
+                snapshot.applyTo(manager);
+                while (commandsApplied < snapshot.commandsApplied && reader.next() != CommandReader.EOF)
+                    commandsApplied++;
+                outputBase = snapshot.outputBytes;
+                snapshot = null;
+            }
+            if (journalFile != null)
+                journal = new CommandJournal(CommandJournal.segment(Paths.get(journalFile), commandsApplied), commandsApplied);
+
+            // Runs of consecutive draw_card go to the deck in bulk (-Dnightpass.bulkdraw=false
+            // turns it off); metrics measure every command on its own, so they keep single inserts
+            manager.setBulkDraws(metrics == null && !"false".equals(System.getProperty("nightpass.bulkdraw")));
+
+            int command;
+            while ((command = reader.next()) != CommandReader.EOF) {
+                if (metrics != null && command != CommandReader.INVALID)
+                    metrics.start(command);
+                long responseStart = writer.position();
 
                 switch (command) {
-                    case "draw_card": {
-                        String name = "";
-                        int att = 0;
-                        int hp = 0;
-                        if (scanner.hasNext())
-                            name = scanner.next();
-                        if (scanner.hasNext())
-                            att = scanner.nextInt();
-                        if (scanner.hasNext())
-                            hp = scanner.nextInt();
-                        // out = draw_card(name, att, hp); // suggested method for draw_card command
-                        out = manager.handleDrawCard(name, att, hp);
+                    case CommandReader.DRAW_CARD: {
+                        manager.handleDrawCard(reader.internName(names), reader.arg(0), reader.arg(1));
                         break;
                     }
-                    case "battle": {
-                        int att = 0;
-                        int hp = 0;
-                        int heal = 0;
-                        if (scanner.hasNext())
-                            att = scanner.nextInt();
-                        if (scanner.hasNext())
-                            hp = scanner.nextInt();
-                        if (scanner.hasNext())
-                            heal = scanner.nextInt();
-                        // out = battle(att, hp, heal); // suggested method for battle command
-                        out = manager.handleBattle(att, hp, heal);
+                    case CommandReader.BATTLE: {
+                        manager.handleBattle(reader.arg(0), reader.arg(1), reader.arg(2));
                         break;
                     }
-                    case "find_winning": {
-                        // out = findWinning(); // suggested method for find_winning command
-                        out = manager.handleFindWinning();
+                    case CommandReader.FIND_WINNING: {
+                        manager.handleFindWinning();
                         break;
                     }
-                    case "deck_count": {
-                        // out = deckCount(); // suggested method for deck_count command
-                        out = manager.handleDeckCount();
+                    case CommandReader.DECK_COUNT: {
+                        manager.handleDeckCount();
                         break;
                     }
-
-                    /*
-                     * Comment this out if you are going to implement type-2 commands
-                     * case "discard_pile_count": {
-                     * out = discardPileCount(); // suggested method for discard_pile_count command
-                     * break;
-                     * }
-                     */
-                    case "steal_card": {
-                        int att = 0;
-                        int hp = 0;
-                        if (scanner.hasNext())
-                            att = scanner.nextInt();
-                        if (scanner.hasNext())
-                            hp = scanner.nextInt();
-                        // out = steal_card(att, hp); // suggested method for steal_card command
-                        out = manager.handleStealCard(att, hp);
+                    case CommandReader.DISCARD_PILE_COUNT: {
+                        manager.handleDiscardPileCount();
+                        break;
+                    }
+                    case CommandReader.COUNT_RANGE:
+                    case CommandReader.KTH_STRONGEST_ATTACK:
+                    case CommandReader.KTH_STRONGEST_HEALTH:
+                    case CommandReader.HISTOGRAM_ATTACK:
+                    case CommandReader.HISTOGRAM_HEALTH: {
+                        manager.handleCommand(command, reader); // analytics queries
+                        break;
+                    }
+                    case CommandReader.STEAL_CARD: {
+                        manager.handleStealCard(reader.arg(0), reader.arg(1));
                         break;
                     }
                     default: {
-                        System.out.println("Invalid command: " + command);
-                        scanner.close();
+                        System.out.println("Invalid command: " + reader.token());
+                        closeQuietly(reader);
                         writer.close();
-                        reader.close();
+                        closeQuietly(journal);
+                        closeQuietly(input);
                         return;
                     }
                 }
 
-                scanner.close();
+                if (metrics != null)
+                    metrics.finish(command, manager);
+
+                if (journal != null)
+                    journal.record(command, reader,
+                            (int) (writer.position() - responseStart), writer.hashSince(responseStart));
 
                 try {
-                    writer.write(out);
-                    // writer.write("\n"); // uncomment if each output needs to be in a new line and
-                    // you did not implement that inside the functions.
+                    writer.endCommand();
                 } catch (IOException e2) {
                     System.out.println("Writing error");
                     e2.printStackTrace();
                 }
+
+                if (++commandsApplied % checkpointEvery == 0 && checkpointPath != null) {
+                    writer.flush();
+                    if (async != null) async.sync();
+                    if (journal != null) journal.flush();
+                    GameSnapshot.write(checkpointPath, manager, commandsApplied, outputBase + writer.position());
+                }
             }
 
         } catch (Exception e) {
@@ -181,6 +230,12 @@ public class Main {
             e.printStackTrace();
         }
 
+        if (metrics != null)
+            metrics.dump(manager);
+
+        closeQuietly(journal);
+        closeQuietly(reader);
+
         // Clean up resources
         try {
             writer.close();
@@ -189,11 +244,27 @@ public class Main {
             e2.printStackTrace();
         }
 
-        if (reader != null) {
-            reader.close();
-        }
+        closeQuietly(input);
 
         System.out.println("end");
         return;
     }
+
+    // Parse -Dnightpass.checkpoint.every (default 1000000); the interval must be positive
+    private static long parseCheckpointEvery(String s) {
+        if (s == null) return 1000000L;
+        try {
+            long every = Long.decode(s.trim());
+            if (every > 0) return every;
+        } catch (NumberFormatException ignored) {
+        }
+        throw new IllegalArgumentException("Invalid checkpoint interval: " + s);
+    }
+
+    private static void closeQuietly(Closeable c) {
+        try {
+            if (c != null) c.close();
+        } catch (IOException ignored) {
+        }
+    }
 }
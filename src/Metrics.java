@@ -0,0 +1,128 @@
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.PrintStream;
+
+/**
+ * Opt-in per-run instrumentation: per-command latency histograms, battle
+ * priority class hits and deck structure statistics, plus an optional JFR
+ * event per command.
+ *
+ * Enabled with -Dnightpass.metrics=true. The report goes to stderr (or to
+ * -Dnightpass.metrics.file) at the end of the run, and additionally every
+ * N commands with -Dnightpass.metrics.every=N. When metrics are off the
+ * command loop does not touch this class at all.
+ */
+public class Metrics {
+    private static final String[] COMMAND_NAMES = {
+            "invalid", "draw_card", "battle", "steal_card", "deck_count", "find_winning",
+            "discard_pile_count", "count_range", "kth_strongest_attack", "kth_strongest_health",
+            "histogram_attack", "histogram_health"
+    };
+
+    private final LatencyHistogram[] latency = new LatencyHistogram[COMMAND_NAMES.length];
+    private final long[] priorityHits = new long[5]; // index 0 = no card to play
+    private final boolean jfr;
+    private final long every;
+    private final PrintStream report;
+
+    private long commands;
+    private long startNanos;
+    private CommandEvent event;
+
+    public Metrics(boolean jfr, long every, PrintStream report) {
+        for (int i = 0; i < latency.length; i++) latency[i] = new LatencyHistogram();
+        this.jfr = jfr;
+        this.every = every;
+        this.report = report;
+    }
+
+    // null unless -Dnightpass.metrics=true
+    public static Metrics fromSystemProperties() {
+        if (!Boolean.getBoolean("nightpass.metrics")) return null;
+        PrintStream report = System.err;
+        String file = System.getProperty("nightpass.metrics.file");
+        if (file != null) {
+            try {
+                report = new PrintStream(new FileOutputStream(file), true);
+            } catch (FileNotFoundException e) {
+                System.out.println("Cannot open metrics file: " + file);
+            }
+        }
+        return new Metrics(Boolean.getBoolean("nightpass.jfr"),
+                Long.getLong("nightpass.metrics.every", 0), report);
+    }
+
+    // Call right before dispatching a command
+    public void start(int command) {
+        if (jfr) {
+            event = new CommandEvent();
+            event.begin();
+        }
+        startNanos = System.nanoTime();
+    }
+
+    // Call right after the command's handler returned
+    public void finish(int command, GameManager game) {
+        long elapsed = System.nanoTime() - startNanos;
+        latency[command].record(elapsed);
+        int priority = 0;
+        if (command == CommandReader.BATTLE) {
+            priority = game.getDeck().getLastPickPriority();
+            priorityHits[priority]++;
+        }
+        if (jfr) {
+            event.end();
+            if (event.shouldCommit()) {
+                event.command = COMMAND_NAMES[command];
+                event.priority = priority;
+                event.deckSize = game.getDeck().getCardCount();
+                event.commit();
+            }
+            event = null;
+        }
+        if (every > 0 && ++commands % every == 0) dump(game);
+    }
+
+    public void dump(GameManager game) {
+        PrintStream out = report;
+        out.println("== Nightpass metrics ==");
+        LatencyHistogram.printHeader(out);
+        for (int i = 1; i < latency.length; i++) {
+            if (latency[i].getCount() > 0) latency[i].printRow(out, COMMAND_NAMES[i]);
+        }
+
+        long battles = 0;
+        for (long h : priorityHits) battles += h;
+        out.print("battle picks:");
+        for (int p = 1; p <= 4; p++) out.printf(" P%d=%d (%.1f%%)", p, priorityHits[p], pct(priorityHits[p], battles));
+        out.printf(" none=%d (%.1f%%)%n", priorityHits[0], pct(priorityHits[0], battles));
+
+        DeckIndex deck = game.getDeck();
+        int cards = deck.getCardCount(), bands = deck.getBandCount();
+        if (bands >= 0) {
+            out.printf("deck: cards=%d bands=%d avg band size=%.2f%n",
+                    cards, bands, bands == 0 ? 0.0 : (double) cards / bands);
+        } else {
+            out.printf("deck: cards=%d (engine has no attack bands)%n", cards);
+        }
+        out.printf("trees: attack height=%d max band height=%s rotations attack=%d health=%s%n",
+                deck.getAttackHeight(), orNa(deck.getMaxBandHeight()),
+                deck.getAttackRotations(), orNa(deck.getHealthRotations()));
+        if (deck instanceof CachingDeck) {
+            CachingDeck cache = (CachingDeck) deck;
+            long lookups = cache.getHits() + cache.getRevalidated() + cache.getMisses();
+            out.printf("pick cache: lookups=%d hits=%d (%.1f%%) revalidated=%d (%.1f%%) misses=%d%n", lookups,
+                    cache.getHits(), pct(cache.getHits(), lookups),
+                    cache.getRevalidated(), pct(cache.getRevalidated(), lookups), cache.getMisses());
+        }
+        out.flush();
+    }
+
+    private static String orNa(long v) {
+        return v < 0 ? "n/a" : Long.toString(v);
+    }
+
+    private static double pct(long part, long whole) {
+        return whole == 0 ? 0.0 : 100.0 * part / whole;
+    }
+}
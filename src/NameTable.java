@@ -0,0 +1,93 @@
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Symbol table for card names: each distinct name (as UTF-8 bytes) gets a
+ * small int id, and cards carry only the id.
+ *
+ * Inputs reuse the same names constantly, so instead of a String per card
+ * the table keeps one byte[] per distinct name, and responses copy those
+ * bytes straight into the ResponseSink. Names are never removed, so a run
+ * whose names are all different pays about one array per name it ever saw.
+ *
+ * Lookup is open addressing with linear probing over the FNV-1a hash of the
+ * bytes. intern() is synchronized so one table can be shared by all games of
+ * a batch run; bytes() takes no lock (ids only come out of intern(), and the
+ * name array is republished through a volatile field when it grows).
+ */
+public class NameTable {
+    private volatile byte[][] names = new byte[64][];
+    private int[] hashes = new int[64];   // hash of each id's name
+    private int[] slots = new int[128];   // id + 1, 0 = empty; always at most half full
+    private int count;
+
+    public int size() { return count; }
+
+    // Id of the name in b[off..off+len), adding it if new
+    public synchronized int intern(byte[] b, int off, int len) {
+        int h = hash(b, off, len);
+        int mask = slots.length - 1;
+        byte[][] t = names;
+        for (int i = h & mask; ; i = (i + 1) & mask) {
+            int id = slots[i] - 1;
+            if (id < 0) break;
+            if (hashes[id] == h && equal(t[id], b, off, len)) return id;
+        }
+
+        int id = count;
+        if (id == t.length) {
+            byte[][] grown = new byte[id * 2][];
+            System.arraycopy(t, 0, grown, 0, id);
+            int[] gh = new int[id * 2];
+            System.arraycopy(hashes, 0, gh, 0, id);
+            hashes = gh;
+            t = grown;
+        }
+        byte[] copy = new byte[len];
+        System.arraycopy(b, off, copy, 0, len);
+        t[id] = copy;
+        hashes[id] = h;
+        names = t;
+        count++;
+        if (2 * count > slots.length) rehash(slots.length * 2);
+        else place(id);
+        return id;
+    }
+
+    public int intern(String name) {
+        byte[] b = name.getBytes(StandardCharsets.UTF_8);
+        return intern(b, 0, b.length);
+    }
+
+    // UTF-8 bytes of a name; shared, must not be modified
+    public byte[] bytes(int id) {
+        return names[id];
+    }
+
+    public String name(int id) {
+        return new String(names[id], StandardCharsets.UTF_8);
+    }
+
+    private void place(int id) {
+        int mask = slots.length - 1;
+        int i = hashes[id] & mask;
+        while (slots[i] != 0) i = (i + 1) & mask;
+        slots[i] = id + 1;
+    }
+
+    private void rehash(int capacity) {
+        slots = new int[capacity];
+        for (int id = 0; id < count; id++) place(id);
+    }
+
+    private static int hash(byte[] b, int off, int len) {
+        int h = 0x811C9DC5;
+        for (int i = off; i < off + len; i++) h = (h ^ (b[i] & 0xFF)) * 0x01000193;
+        return h ^ (h >>> 16);
+    }
+
+    private static boolean equal(byte[] name, byte[] b, int off, int len) {
+        if (name.length != len) return false;
+        for (int i = 0; i < len; i++) if (name[i] != b[off + i]) return false;
+        return true;
+    }
+}
@@ -0,0 +1,549 @@
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Persistent variant of the nested index ("persistent" engine): the same
+ * attack-band AVL of health AVLs as Deck, but every node is immutable and
+ * an insert or delete copies only the O(log n) nodes on its path. Each
+ * mutation ends by publishing the new root as a Version through an
+ * AtomicReference.
+ *
+ * One thread (the game) mutates; any number of other threads can call
+ * current() and query that Version for as long as they like, with no lock:
+ * it never changes, and the writer never waits for them. Nodes copy the
+ * keys they are sorted by, so a version answers from the deck as it was
+ * when published even though the Card objects it hands out are live (their
+ * stats move on when the game repositions them).
+ *
+ * Picks follow the same rules as Deck (see DeckIndex), so the engine gives
+ * identical game output.
+ *
+ * The health-ranked analytics queries use a HealthRankIndex that the writer
+ * builds on first use and keeps in step, so, unlike countRange on a
+ * Version, they are writer-thread only.
+ */
+public class PersistentDeck implements DeckIndex {
+    // ----- immutable health node: ordered by (H, order) -----
+    private static final class HNode {
+        final Card card;
+        final int h, ord;     // key, copied from the card
+        final HNode left, right;
+        final int height, size;
+        final int minH, maxH; // subtree health range
+
+        HNode(Card card, int h, int ord, HNode left, HNode right) {
+            this.card = card;
+            this.h = h;
+            this.ord = ord;
+            this.left = left;
+            this.right = right;
+            this.height = 1 + Math.max(hH(left), hH(right));
+            this.size = 1 + szH(left) + szH(right);
+            this.minH = left == null ? h : left.minH;
+            this.maxH = right == null ? h : right.maxH;
+        }
+    }
+
+    // ----- immutable attack band node: ordered by A -----
+    private static final class ANode {
+        final int A;
+        final HNode band;     // health tree of this band, never empty
+        final ANode left, right;
+        final int height, size;
+        final int subtreeMinA, subtreeMaxA, subtreeMinH, subtreeMaxH;
+
+        ANode(int A, HNode band, ANode left, ANode right) {
+            this.A = A;
+            this.band = band;
+            this.left = left;
+            this.right = right;
+            this.height = 1 + Math.max(hA(left), hA(right));
+            this.size = band.size + szA(left) + szA(right);
+            this.subtreeMinA = left == null ? A : left.subtreeMinA;
+            this.subtreeMaxA = right == null ? A : right.subtreeMaxA;
+            int minH = band.minH, maxH = band.maxH;
+            if (left != null) { minH = Math.min(minH, left.subtreeMinH); maxH = Math.max(maxH, left.subtreeMaxH); }
+            if (right != null) { minH = Math.min(minH, right.subtreeMinH); maxH = Math.max(maxH, right.subtreeMaxH); }
+            this.subtreeMinH = minH;
+            this.subtreeMaxH = maxH;
+        }
+    }
+
+    /** A pick made against one Version: the card, its priority class (0 for steals) and its key then. */
+    public static final class Pick {
+        public final Card card;
+        public final int priority, attack, health;
+
+        Pick(Card card, int priority, int attack, int health) {
+            this.card = card;
+            this.priority = priority;
+            this.attack = attack;
+            this.health = health;
+        }
+    }
+
+    /** One published state of the deck; immutable, safe to query from any thread. */
+    public static final class Version {
+        private final ANode root;
+        private final long number;
+
+        Version(ANode root, long number) {
+            this.root = root;
+            this.number = number;
+        }
+
+        // Mutations applied before this version was published
+        public long getNumber() { return number; }
+
+        public int getCardCount() { return szA(root); }
+
+        // The card a battle against this Stranger would play (P1..P4), null if the deck is empty
+        public Pick battlePick(int strangerAttack, int strangerHealth) {
+            ANode band = bandForP1(root, strangerHealth, strangerAttack + 1);
+            if (band != null) return pick(band, hLowerBound(band.band, strangerAttack + 1), 1);
+            band = bandForP2(root, strangerHealth, strangerAttack + 1);
+            if (band != null) return pick(band, hLowerBound(band.band, strangerAttack + 1), 2);
+            band = bandForP3(root, strangerHealth, strangerAttack);
+            if (band != null) return pick(band, hMin(band.band), 3);
+            band = bandForP4(root);
+            return band == null ? null : pick(band, hMin(band.band), 4);
+        }
+
+        // The card steal_card would take with these limits, null if none
+        public Pick stealPick(int attackLimit, int healthLimit) {
+            ANode band = bandForSteal(root, attackLimit + 1, healthLimit);
+            return band == null ? null : pick(band, hLowerBound(band.band, healthLimit + 1), 0);
+        }
+
+        // Number of cards with aLo <= A_cur <= aHi and hLo <= H_cur <= hHi
+        public int countRange(int aLo, int aHi, int hLo, int hHi) {
+            if (aLo > aHi || hLo > hHi) return 0;
+            return countBox(root, aLo, aHi, hLo, hHi);
+        }
+
+        private static Pick pick(ANode band, HNode n, int priority) {
+            return new Pick(n.card, priority, band.A, n.h);
+        }
+    }
+
+    private final AtomicReference<Version> published;
+    private Version head;  // the writer's copy of the latest version
+    private int lastPickPriority;
+    private int checkLevel;
+    private int bandCount;
+    private long aRotations, hRotations;
+    private HealthRankIndex healthRank; // see the class comment; a fork starts without one
+
+    public PersistentDeck() {
+        this(new Version(null, 0));
+    }
+
+    private PersistentDeck(Version head) {
+        this.head = head;
+        this.published = new AtomicReference<>(head);
+    }
+
+    /**
+     * A private copy of the deck in O(1): it starts from the writer's latest
+     * version and path-copies from there, so its mutations are never seen
+     * through this deck's current(). Dropping the fork discards them.
+     * Card objects are shared, so whoever mutates the fork must put the
+     * cards' stats back (GameManager.lookahead does), and readers of this
+     * deck's versions see the fork's card stats until then.
+     */
+    public PersistentDeck fork() {
+        PersistentDeck f = new PersistentDeck(head);
+        f.checkLevel = checkLevel;
+        f.bandCount = bandCount;
+        return f;
+    }
+
+    // Latest published version; callable from any thread
+    public Version current() {
+        return published.get();
+    }
+
+    private void publish(ANode root) {
+        head = new Version(root, head.number + 1);
+        published.set(head);
+    }
+
+    // ----- DeckIndex: mutations (writer thread only) -----
+    public void insert(Card c) {
+        publish(aInsert(head.root, c, c.getACur(), c.getHCur(), c.getOrder()));
+        if (healthRank != null) healthRank.insert(c);
+    }
+
+    public void delete(Card c) {
+        ANode root = aDelete(head.root, c.getACur(), c.getHCur(), c.getOrder());
+        if (root == head.root) return; // identical root: the card was not there
+        publish(root);
+        if (healthRank != null) healthRank.delete(c);
+    }
+
+    // Delete and re-insert under the new key, published as one version
+    public void reposition(Card c, int newA, int newH, int newOrder) {
+        ANode root = aDelete(head.root, c.getACur(), c.getHCur(), c.getOrder());
+        if (healthRank != null) healthRank.delete(c);
+        c.setHCur(newH);
+        c.setACur(newA);
+        c.setOrder(newOrder);
+        publish(aInsert(root, c, newA, newH, newOrder));
+        if (healthRank != null) healthRank.insert(c);
+    }
+
+    public int getCardCount() { return head.getCardCount(); }
+
+    public Card findOptimalBattleCard(int strangerAttack, int strangerHealth) {
+        Pick p = head.battlePick(strangerAttack, strangerHealth);
+        lastPickPriority = p == null ? 0 : p.priority;
+        return p == null ? null : p.card;
+    }
+
+    public int getLastPickPriority() { return lastPickPriority; }
+
+    public Card findBestStealCandidate(int attackLimit, int healthLimit) {
+        Pick p = head.stealPick(attackLimit, healthLimit);
+        return p == null ? null : p.card;
+    }
+
+    // Health-only ranges come from the rank index; the rest as on a Version
+    public int countRange(int aLo, int aHi, int hLo, int hHi) {
+        ANode root = head.root;
+        if (root != null && aLo <= root.subtreeMinA && aHi >= root.subtreeMaxA && hLo <= hHi)
+            return healthRank().count(hLo, hHi);
+        return head.countRange(aLo, aHi, hLo, hHi);
+    }
+
+    // k-th from the top in (A, H, order): walk bands from the right by subtree size
+    public Card kthByAttack(int k) {
+        if (k < 1 || k > getCardCount()) return null;
+        ANode n = head.root;
+        while (n != null) {
+            int rs = szA(n.right);
+            if (k <= rs) { n = n.right; continue; }
+            k -= rs;
+            if (k <= n.band.size) return hSelect(n.band, n.band.size - k).card;
+            k -= n.band.size;
+            n = n.left;
+        }
+        return null;
+    }
+
+    public Card kthByHealth(int k) {
+        return healthRank().kthFromTop(k);
+    }
+
+    public long ceilingAttack(int a) {
+        long ans = NO_VALUE;
+        for (ANode n = head.root; n != null; ) {
+            if (n.A >= a) { ans = n.A; n = n.left; }
+            else n = n.right;
+        }
+        return ans;
+    }
+
+    public long ceilingHealth(int h) {
+        return healthRank().ceiling(h);
+    }
+
+    private HealthRankIndex healthRank() {
+        if (healthRank == null) healthRank = HealthRankIndex.of(this);
+        return healthRank;
+    }
+
+    // ----- bulk export / load -----
+    public void copyInOrder(Card[] out) { copyA(head.root, out, 0); }
+
+    private static int copyA(ANode n, Card[] out, int i) {
+        if (n == null) return i;
+        i = copyA(n.left, out, i);
+        i = copyH(n.band, out, i);
+        return copyA(n.right, out, i);
+    }
+
+    private static int copyH(HNode n, Card[] out, int i) {
+        if (n == null) return i;
+        i = copyH(n.left, out, i);
+        out[i++] = n.card;
+        return copyH(n.right, out, i);
+    }
+
+    public void loadSorted(Card[] cards, int n) {
+        int bands = 0;
+        for (int i = 0; i < n; i++) if (i == 0 || cards[i].getACur() != cards[i - 1].getACur()) bands++;
+        int[] bandStart = new int[bands + 1];
+        for (int i = 0, b = 0; i < n; i++) if (i == 0 || cards[i].getACur() != cards[i - 1].getACur()) bandStart[b++] = i;
+        bandStart[bands] = n;
+        bandCount = bands;
+        publish(buildA(cards, bandStart, 0, bands - 1));
+        healthRank = null; // rebuilt on the next health query
+    }
+
+    private static ANode buildA(Card[] cards, int[] bandStart, int lo, int hi) {
+        if (lo > hi) return null;
+        int mid = (lo + hi) >>> 1;
+        return new ANode(cards[bandStart[mid]].getACur(), buildH(cards, bandStart[mid], bandStart[mid + 1] - 1),
+                buildA(cards, bandStart, lo, mid - 1), buildA(cards, bandStart, mid + 1, hi));
+    }
+
+    private static HNode buildH(Card[] cards, int lo, int hi) {
+        if (lo > hi) return null;
+        int mid = (lo + hi) >>> 1;
+        Card c = cards[mid];
+        return new HNode(c, c.getHCur(), c.getOrder(), buildH(cards, lo, mid - 1), buildH(cards, mid + 1, hi));
+    }
+
+    // ----- integrity checks and statistics -----
+    public void setCheckLevel(int level) { checkLevel = level; }
+
+    public void verifyCount() {
+        if (checkLevel == Deck.CHECK_OFF) return;
+        int stored = getCardCount();
+        // the stored count is the root's size summary, so only a full recount can disagree
+        int real = checkLevel == Deck.CHECK_FULL ? countAll(head.root) : stored;
+        if (real != stored) {
+            System.out.println("[VERIFY] Mismatch: real=" + real + " stored=" + stored);
+        }
+    }
+
+    private static int countAll(ANode n) {
+        return n == null ? 0 : countAll(n.left) + countH(n.band) + countAll(n.right);
+    }
+
+    private static int countH(HNode n) {
+        return n == null ? 0 : 1 + countH(n.left) + countH(n.right);
+    }
+
+    public int getBandCount() { return bandCount; }
+    public int getAttackHeight() { return hA(head.root); }
+    public int getMaxBandHeight() { return maxBandHeight(head.root); }
+    public long getAttackRotations() { return aRotations; }
+    public long getHealthRotations() { return hRotations; }
+
+    private static int maxBandHeight(ANode n) {
+        if (n == null) return 0;
+        return Math.max(hH(n.band), Math.max(maxBandHeight(n.left), maxBandHeight(n.right)));
+    }
+
+    // -------- health tree: path-copying insert/delete --------
+    private static int hH(HNode n) { return n == null ? 0 : n.height; }
+    private static int szH(HNode n) { return n == null ? 0 : n.size; }
+
+    private static int cmpH(int h, int ord, HNode n) {
+        if (h != n.h) return h < n.h ? -1 : 1;
+        return Integer.compare(ord, n.ord);
+    }
+
+    // New node (card, l, r), rebalanced with fresh nodes if the heights differ by 2
+    private HNode balH(Card c, int h, int ord, HNode l, HNode r) {
+        if (hH(l) > hH(r) + 1) {
+            hRotations++;
+            if (hH(l.left) >= hH(l.right))
+                return new HNode(l.card, l.h, l.ord, l.left, new HNode(c, h, ord, l.right, r));
+            HNode m = l.right;
+            hRotations++;
+            return new HNode(m.card, m.h, m.ord, new HNode(l.card, l.h, l.ord, l.left, m.left), new HNode(c, h, ord, m.right, r));
+        }
+        if (hH(r) > hH(l) + 1) {
+            hRotations++;
+            if (hH(r.right) >= hH(r.left))
+                return new HNode(r.card, r.h, r.ord, new HNode(c, h, ord, l, r.left), r.right);
+            HNode m = r.left;
+            hRotations++;
+            return new HNode(m.card, m.h, m.ord, new HNode(c, h, ord, l, m.left), new HNode(r.card, r.h, r.ord, m.right, r.right));
+        }
+        return new HNode(c, h, ord, l, r);
+    }
+
+    private HNode hInsert(HNode n, Card c, int h, int ord) {
+        if (n == null) return new HNode(c, h, ord, null, null);
+        if (cmpH(h, ord, n) < 0) return balH(n.card, n.h, n.ord, hInsert(n.left, c, h, ord), n.right);
+        return balH(n.card, n.h, n.ord, n.left, hInsert(n.right, c, h, ord));
+    }
+
+    // Tree without (h, ord); the same tree object if the key is not there
+    private HNode hDelete(HNode n, int h, int ord) {
+        if (n == null) return null;
+        int cmp = cmpH(h, ord, n);
+        if (cmp < 0) {
+            HNode l = hDelete(n.left, h, ord);
+            return l == n.left ? n : balH(n.card, n.h, n.ord, l, n.right);
+        }
+        if (cmp > 0) {
+            HNode r = hDelete(n.right, h, ord);
+            return r == n.right ? n : balH(n.card, n.h, n.ord, n.left, r);
+        }
+        if (n.left == null) return n.right;
+        if (n.right == null) return n.left;
+        HNode succ = hMin(n.right);
+        return balH(succ.card, succ.h, succ.ord, n.left, hDelete(n.right, succ.h, succ.ord));
+    }
+
+    private static HNode hMin(HNode n) {
+        while (n.left != null) n = n.left;
+        return n;
+    }
+
+    // Smallest (H, order) node with H >= keyH
+    private static HNode hLowerBound(HNode n, int keyH) {
+        HNode ans = null;
+        while (n != null) {
+            if (n.h >= keyH) { ans = n; n = n.left; }
+            else n = n.right;
+        }
+        return ans;
+    }
+
+    // i-th (0-based) smallest node of a health tree
+    private static HNode hSelect(HNode n, int i) {
+        while (true) {
+            int ls = szH(n.left);
+            if (i < ls) n = n.left;
+            else if (i == ls) return n;
+            else { i -= ls + 1; n = n.right; }
+        }
+    }
+
+    // Nodes with H < h (or <= h when inclusive)
+    private static int hCountBelow(HNode n, int h, boolean inclusive) {
+        int count = 0;
+        while (n != null) {
+            if (n.h < h || (inclusive && n.h == h)) { count += szH(n.left) + 1; n = n.right; }
+            else n = n.left;
+        }
+        return count;
+    }
+
+    // -------- attack tree: path-copying insert/delete --------
+    private static int hA(ANode n) { return n == null ? 0 : n.height; }
+    private static int szA(ANode n) { return n == null ? 0 : n.size; }
+
+    private ANode balA(int A, HNode band, ANode l, ANode r) {
+        if (hA(l) > hA(r) + 1) {
+            aRotations++;
+            if (hA(l.left) >= hA(l.right))
+                return new ANode(l.A, l.band, l.left, new ANode(A, band, l.right, r));
+            ANode m = l.right;
+            aRotations++;
+            return new ANode(m.A, m.band, new ANode(l.A, l.band, l.left, m.left), new ANode(A, band, m.right, r));
+        }
+        if (hA(r) > hA(l) + 1) {
+            aRotations++;
+            if (hA(r.right) >= hA(r.left))
+                return new ANode(r.A, r.band, new ANode(A, band, l, r.left), r.right);
+            ANode m = r.left;
+            aRotations++;
+            return new ANode(m.A, m.band, new ANode(A, band, l, m.left), new ANode(r.A, r.band, m.right, r.right));
+        }
+        return new ANode(A, band, l, r);
+    }
+
+    private ANode aInsert(ANode n, Card c, int a, int h, int ord) {
+        if (n == null) {
+            bandCount++;
+            return new ANode(a, new HNode(c, h, ord, null, null), null, null);
+        }
+        if (a < n.A) return balA(n.A, n.band, aInsert(n.left, c, a, h, ord), n.right);
+        if (a > n.A) return balA(n.A, n.band, n.left, aInsert(n.right, c, a, h, ord));
+        return new ANode(n.A, hInsert(n.band, c, h, ord), n.left, n.right); // same shape, new band
+    }
+
+    // Tree without the card keyed (a, h, ord); the same tree object if it is not there
+    private ANode aDelete(ANode n, int a, int h, int ord) {
+        if (n == null) return null;
+        if (a < n.A) {
+            ANode l = aDelete(n.left, a, h, ord);
+            return l == n.left ? n : balA(n.A, n.band, l, n.right);
+        }
+        if (a > n.A) {
+            ANode r = aDelete(n.right, a, h, ord);
+            return r == n.right ? n : balA(n.A, n.band, n.left, r);
+        }
+        HNode band = hDelete(n.band, h, ord);
+        if (band == n.band) return n;
+        if (band != null) return new ANode(n.A, band, n.left, n.right);
+        // band became empty: remove the band node, replacing it by its successor band
+        bandCount--;
+        if (n.left == null) return n.right;
+        if (n.right == null) return n.left;
+        ANode succ = n.right;
+        while (succ.left != null) succ = succ.left;
+        return balA(succ.A, succ.band, n.left, aDeleteMin(n.right));
+    }
+
+    private ANode aDeleteMin(ANode n) {
+        if (n.left == null) return n.right;
+        return balA(n.A, n.band, aDeleteMin(n.left), n.right);
+    }
+
+    // -------- band finders, as in Deck --------
+    // P1: smallest A >= strangerHealth with some H >= needHealth
+    private static ANode bandForP1(ANode n, int strangerHealth, int needHealth) {
+        if (n == null || n.subtreeMaxH < needHealth) return null;
+        if (n.A >= strangerHealth) {
+            if (n.left != null && n.left.subtreeMaxA >= strangerHealth && n.left.subtreeMaxH >= needHealth) {
+                ANode ans = bandForP1(n.left, strangerHealth, needHealth);
+                if (ans != null) return ans;
+            }
+            if (n.band.maxH >= needHealth) return n;
+        }
+        return bandForP1(n.right, strangerHealth, needHealth);
+    }
+
+    // P2: largest A < strangerHealth with some H >= needHealth
+    private static ANode bandForP2(ANode n, int strangerHealth, int needHealth) {
+        if (n == null || n.subtreeMaxH < needHealth) return null;
+        if (n.A >= strangerHealth) return bandForP2(n.left, strangerHealth, needHealth);
+        if (n.right != null && n.right.subtreeMinA < strangerHealth && n.right.subtreeMaxH >= needHealth) {
+            ANode ans = bandForP2(n.right, strangerHealth, needHealth);
+            if (ans != null) return ans;
+        }
+        if (n.band.maxH >= needHealth) return n;
+        return bandForP2(n.left, strangerHealth, needHealth);
+    }
+
+    // P3: smallest A >= strangerHealth with some H <= strangerAttack
+    private static ANode bandForP3(ANode n, int strangerHealth, int strangerAttack) {
+        if (n == null || n.subtreeMinH > strangerAttack) return null;
+        if (n.A >= strangerHealth) {
+            if (n.left != null && n.left.subtreeMaxA >= strangerHealth && n.left.subtreeMinH <= strangerAttack) {
+                ANode ans = bandForP3(n.left, strangerHealth, strangerAttack);
+                if (ans != null) return ans;
+            }
+            if (n.band.minH <= strangerAttack) return n;
+        }
+        return bandForP3(n.right, strangerHealth, strangerAttack);
+    }
+
+    // P4: largest A
+    private static ANode bandForP4(ANode n) {
+        if (n == null) return null;
+        while (n.right != null) n = n.right;
+        return n;
+    }
+
+    // Steal: smallest A >= minA with some H > healthLimit
+    private static ANode bandForSteal(ANode n, int minA, int healthLimit) {
+        if (n == null || n.subtreeMaxH <= healthLimit) return null;
+        if (n.A >= minA) {
+            if (n.left != null && n.left.subtreeMaxA >= minA && n.left.subtreeMaxH > healthLimit) {
+                ANode ans = bandForSteal(n.left, minA, healthLimit);
+                if (ans != null) return ans;
+            }
+            if (n.band.maxH > healthLimit) return n;
+        }
+        return bandForSteal(n.right, minA, healthLimit);
+    }
+
+    // Cards in the box; subtrees wholly inside it count by their size, bands on its edge by rank.
+    // Output-sensitive: O(n) in the worst case, when health interleaves along the attack order
+    private static int countBox(ANode n, int aLo, int aHi, int hLo, int hHi) {
+        if (n == null || n.subtreeMaxA < aLo || n.subtreeMinA > aHi
+                || n.subtreeMaxH < hLo || n.subtreeMinH > hHi) return 0;
+        if (aLo <= n.subtreeMinA && n.subtreeMaxA <= aHi && hLo <= n.subtreeMinH && n.subtreeMaxH <= hHi)
+            return n.size;
+        int count = countBox(n.left, aLo, aHi, hLo, hHi) + countBox(n.right, aLo, aHi, hLo, hHi);
+        if (n.A >= aLo && n.A <= aHi) count += hCountBelow(n.band, hHi, true) - hCountBelow(n.band, hLo, false);
+        return count;
+    }
+}
@@ -0,0 +1,151 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reusable output buffer that GameManager appends its responses into.
+ *
+ * Messages are assembled from pre-encoded byte fragments and hand-formatted
+ * ints, so producing a response allocates nothing. Appends never touch the
+ * underlying stream: the buffer grows if a single command needs more room,
+ * and bytes are only handed to the stream in large blocks, either from
+ * endCommand() once the buffer passes its flush threshold or from flush().
+ */
+public class ResponseSink implements Closeable {
+    private static final int DEFAULT_CAPACITY = 1 << 16;
+    private static final int MAX_CAPACITY = Integer.MAX_VALUE - 8; // largest array most VMs allocate
+
+    private final OutputStream out;
+    private byte[] buf;
+    private int len;
+    private final int flushThreshold;
+    private long flushedBytes; // bytes already handed to the stream
+
+    public ResponseSink(OutputStream out) {
+        this(out, DEFAULT_CAPACITY);
+    }
+
+    public ResponseSink(OutputStream out, int capacity) {
+        this.out = out;
+        this.buf = new byte[capacity];
+        this.len = 0;
+        this.flushThreshold = capacity - (capacity >> 3);
+        this.flushedBytes = 0;
+    }
+
+    // Encode a constant message fragment once, at class init of the caller
+    public static byte[] fragment(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    public ResponseSink append(byte[] fragment) {
+        ensure(fragment.length);
+        System.arraycopy(fragment, 0, buf, len, fragment.length);
+        len += fragment.length;
+        return this;
+    }
+
+    public ResponseSink append(byte b) {
+        ensure(1);
+        buf[len++] = b;
+        return this;
+    }
+
+    // Decimal formatting without going through String
+    public ResponseSink appendInt(int v) {
+        ensure(11);
+        if (v == Integer.MIN_VALUE) return append(MIN_INT);
+        if (v < 0) { buf[len++] = '-'; v = -v; }
+        int digits = 1;
+        for (int t = v; t >= 10; t /= 10) digits++;
+        int p = len + digits;
+        len = p;
+        do {
+            buf[--p] = (byte) ('0' + v % 10);
+            v /= 10;
+        } while (v != 0);
+        return this;
+    }
+
+    // Card names are plain ASCII in practice; other chars fall back to UTF-8
+    public ResponseSink appendString(String s) {
+        int n = s.length();
+        ensure(n);
+        for (int i = 0; i < n; i++) {
+            char c = s.charAt(i);
+            if (c >= 0x80) {
+                return append(s.substring(i).getBytes(StandardCharsets.UTF_8));
+            }
+            buf[len++] = (byte) c;
+        }
+        return this;
+    }
+
+    // Command boundary: hand a full block to the stream if we passed the threshold
+    public void endCommand() throws IOException {
+        if (len >= flushThreshold) flush();
+    }
+
+    public void flush() throws IOException {
+        if (len > 0) {
+            out.write(buf, 0, len);
+            flushedBytes += len;
+            len = 0;
+        }
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+        out.close();
+    }
+
+    // Total bytes produced so far (flushed + pending)
+    public long position() { return flushedBytes + len; }
+
+    // FNV-1a hash of everything produced since absolute position from; only valid
+    // before endCommand(), while the current command's bytes are still pending
+    public long hashSince(long from) {
+        long h = FNV_OFFSET;
+        for (int i = pendingIndex(from); i < len; i++) {
+            h ^= buf[i] & 0xff;
+            h *= FNV_PRIME;
+        }
+        return h;
+    }
+
+    // Text produced since absolute position from (same rules as hashSince)
+    public String textSince(long from) {
+        int start = pendingIndex(from);
+        return new String(buf, start, len - start, StandardCharsets.UTF_8);
+    }
+
+    private int pendingIndex(long from) {
+        long start = from - flushedBytes;
+        if (start < 0 || start > len) throw new IllegalStateException("Position " + from + " is no longer buffered");
+        return (int) start;
+    }
+
+    // Pending (not yet flushed) bytes, mainly for debugging
+    @Override
+    public String toString() {
+        return new String(buf, 0, len, StandardCharsets.UTF_8);
+    }
+
+    // Grow by doubling; sizes are computed in long so they cannot wrap past 1 GiB
+    private void ensure(int extra) {
+        long need = (long) len + extra;
+        if (need <= buf.length) return;
+        if (need > MAX_CAPACITY) throw new OutOfMemoryError("Response of " + need + " bytes does not fit in one buffer");
+        int cap = (int) Math.min(MAX_CAPACITY, Math.max(need, 2L * buf.length));
+        byte[] grown = new byte[cap];
+        System.arraycopy(buf, 0, grown, 0, len);
+        buf = grown;
+    }
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    private static final byte[] MIN_INT = fragment(Integer.toString(Integer.MIN_VALUE));
+}
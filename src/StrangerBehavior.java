@@ -0,0 +1,33 @@
+import java.util.Random;
+
+/**
+ * How the Stranger plays a steal_card turn in simulations: picks the
+ * attack/health limits and issues the steal through
+ * GameManager.handleStealCard, or passes.
+ */
+public interface StrangerBehavior {
+    void steal(GameManager game, Random rnd);
+
+    // Never steals
+    StrangerBehavior PASSIVE = (game, rnd) -> { };
+
+    /**
+     * Behavior by name, for cards whose stats lie in 1..maxValue:
+     *  - random: uniform limits in 0..maxValue-1
+     *  - greedy: goes for the strongest attack band (limits A_max-1, 0)
+     *  - passive: never steals
+     */
+    static StrangerBehavior forName(String name, int maxValue) {
+        switch (name) {
+            case "random":
+                return (game, rnd) -> game.handleStealCard(rnd.nextInt(maxValue), rnd.nextInt(maxValue));
+            case "greedy":
+                return (game, rnd) -> {
+                    Card top = game.getDeck().kthByAttack(1);
+                    if (top != null) game.handleStealCard(top.getACur() - 1, 0);
+                };
+            case "passive": return PASSIVE;
+            default: throw new IllegalArgumentException("Unknown stranger behavior: " + name);
+        }
+    }
+}
@@ -0,0 +1,45 @@
+import java.util.Random;
+
+/**
+ * Chooses the card the Survivor plays in a battle (see
+ * GameManager.setSurvivorStrategy). The game itself always uses PRIORITY,
+ * the P1-P4 rule of DeckIndex.findOptimalBattleCard; the other policies
+ * exist so simulations can compare against it. Whatever card is chosen,
+ * the battle is resolved and reported with the normal rules.
+ */
+public interface SurvivorStrategy {
+    // The card to play, or null to play nothing (the Stranger then scores as for an empty deck)
+    Card choose(DeckIndex deck, int strangerAttack, int strangerHealth);
+
+    SurvivorStrategy PRIORITY = DeckIndex::findOptimalBattleCard;
+
+    // Highest attack (then health) in the deck
+    SurvivorStrategy STRONGEST = (deck, strangerAttack, strangerHealth) -> deck.kthByAttack(1);
+
+    // Lowest attack: keep the strong cards back
+    SurvivorStrategy WEAKEST = (deck, strangerAttack, strangerHealth) -> deck.kthByAttack(deck.getCardCount());
+
+    // Highest health (then attack) in the deck
+    SurvivorStrategy TOUGHEST = (deck, strangerAttack, strangerHealth) -> deck.kthByHealth(1);
+
+    /**
+     * Strategy by name: priority, strongest, weakest, toughest, or random
+     * (a uniformly random card, drawn from a generator seeded with seed).
+     */
+    static SurvivorStrategy forName(String name, long seed) {
+        switch (name) {
+            case "priority": return PRIORITY;
+            case "strongest": return STRONGEST;
+            case "weakest": return WEAKEST;
+            case "toughest": return TOUGHEST;
+            case "random": {
+                Random rnd = new Random(seed);
+                return (deck, strangerAttack, strangerHealth) -> {
+                    int n = deck.getCardCount();
+                    return n == 0 ? null : deck.kthByAttack(1 + rnd.nextInt(n));
+                };
+            }
+            default: throw new IllegalArgumentException("Unknown survivor strategy: " + name);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+/**
+ * Change log of a GameManager lookahead: every deck and discard pile change
+ * is recorded with the card's stats from before it, and rollback() applies
+ * the inverse changes newest first. Undoing k changes costs k index
+ * operations, independent of the deck size.
+ */
+final class UndoLog {
+    static final int INSERTED = 0, DELETED = 1, MOVED = 2, PILE_ADDED = 3, PILE_REMOVED = 4;
+
+    private int[] kinds = new int[16];
+    private Card[] cards = new Card[16];
+    private int[] stats = new int[16 * 4]; // A_base, A_cur, H_cur, order before the change
+    private int size;
+
+    void record(int kind, Card c) {
+        if (size == kinds.length) grow();
+        kinds[size] = kind;
+        cards[size] = c;
+        int s = size * 4;
+        stats[s] = c.getABase();
+        stats[s + 1] = c.getACur();
+        stats[s + 2] = c.getHCur();
+        stats[s + 3] = c.getOrder();
+        size++;
+    }
+
+    /**
+     * Undo everything recorded, newest first. With deck == null the deck
+     * changes are not replayed (the caller drops a forked deck instead), but
+     * card stats and the discard pile are still put back.
+     */
+    void rollback(DeckIndex deck, DiscardPile pile) {
+        while (size > 0) {
+            size--;
+            Card c = cards[size];
+            cards[size] = null;
+            int s = size * 4;
+            switch (kinds[size]) {
+                case INSERTED:
+                    if (deck != null) deck.delete(c);
+                    break;
+                case MOVED:
+                    if (deck != null) deck.reposition(c, stats[s + 1], stats[s + 2], stats[s + 3]);
+                    else restore(c, s);
+                    break;
+                case DELETED:
+                    restore(c, s);
+                    if (deck != null) deck.insert(c);
+                    break;
+                case PILE_ADDED:
+                    pile.remove(c);
+                    break;
+                case PILE_REMOVED:
+                    restore(c, s);
+                    pile.add(c);
+                    break;
+            }
+        }
+    }
+
+    private void restore(Card c, int s) {
+        c.setABase(stats[s]);
+        c.setACur(stats[s + 1]);
+        c.setHCur(stats[s + 2]);
+        c.setOrder(stats[s + 3]);
+    }
+
+    private void grow() {
+        int n = kinds.length * 2;
+        int[] k = new int[n];
+        System.arraycopy(kinds, 0, k, 0, size);
+        kinds = k;
+        Card[] c = new Card[n];
+        System.arraycopy(cards, 0, c, 0, size);
+        cards = c;
+        int[] st = new int[n * 4];
+        System.arraycopy(stats, 0, st, 0, size * 4);
+        stats = st;
+    }
+}